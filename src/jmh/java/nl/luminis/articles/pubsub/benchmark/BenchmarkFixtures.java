@@ -0,0 +1,52 @@
+package nl.luminis.articles.pubsub.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.auth.AuthenticationMethod;
+import nl.luminis.articles.pubsub.codec.CodecConfig;
+import nl.luminis.articles.pubsub.codec.PayloadCodecRegistry;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.subscriber.sink.FullSinkPolicy;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.StandardEnvironment;
+
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    static PubSubConfig createPubSubConfig() {
+        // Benchmarks run without a Spring context, so there is no application.properties to configure logging either.
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        PubSubConfig config = new PubSubConfig();
+        config.setEnvironment(new StandardEnvironment());
+        config.setGcpProjectName("benchmark-project");
+        config.setAuthenticationMethod(AuthenticationMethod.NONE);
+        config.setPubSubUrl("localhost:8432");
+        config.setTopicName("benchmark-topic");
+        config.setSubscriptionName("benchmark-subscription");
+        config.setMaxOutstandingPublishes(100_000);
+        config.setPublisherRegistryMaximumSize(100);
+        config.setPublisherRegistryIdleTimeoutSeconds(600);
+        config.setSinkCapacity(1024);
+        config.setSinkFullPolicy(FullSinkPolicy.DROP_OLDEST);
+        return config;
+    }
+
+    static PayloadCodecRegistry createCodecRegistry() {
+        CodecConfig codecConfig = new CodecConfig();
+        return new PayloadCodecRegistry(List.of(
+            codecConfig.createJsonCodec(new ObjectMapper()),
+            codecConfig.createSmileCodec(),
+            codecConfig.createCborCodec(),
+            codecConfig.createProtobufCodec()));
+    }
+
+    static DummyMessage createMessage(int payloadSize) {
+        return DummyMessage.builder().id(1L).message("x".repeat(payloadSize)).build();
+    }
+}
@@ -0,0 +1,98 @@
+package nl.luminis.articles.pubsub.benchmark;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.pubsub.v1.PubsubMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.auth.CredentialsProviderFactory;
+import nl.luminis.articles.pubsub.auth.TransportChannelProviderFactory;
+import nl.luminis.articles.pubsub.codec.ContentTypes;
+import nl.luminis.articles.pubsub.codec.PayloadCodecRegistry;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageMapper;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageReader;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherFactory;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import nl.luminis.articles.pubsub.subscriber.DummyMessageSubscriber;
+import nl.luminis.articles.pubsub.subscriber.SubscriberFactory;
+import nl.luminis.articles.pubsub.subscriber.sink.RingBufferMessageSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures decoding a received message, handing it to the sink and acking it. The subscriber is never started, so no connection to
+ * Pub/Sub is made.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DummyMessageSubscriberBenchmark {
+
+    @Param({"64", "1024", "16384", "262144"})
+    public int payloadSize;
+    @Param({ContentTypes.JSON, ContentTypes.SMILE, ContentTypes.CBOR, ContentTypes.PROTOBUF})
+    public String contentType;
+
+    private TransportChannelProviderFactory channelProviderFactory;
+    private PublisherRegistry publisherRegistry;
+    private DummyMessageSubscriber subscriber;
+    private PubsubMessage pubsubMessage;
+
+    @Setup
+    public void setUp() {
+        PubSubConfig config = BenchmarkFixtures.createPubSubConfig();
+        PayloadCodecRegistry codecRegistry = BenchmarkFixtures.createCodecRegistry();
+        channelProviderFactory = new TransportChannelProviderFactory(config);
+        CredentialsProviderFactory credentialsProviderFactory = new CredentialsProviderFactory(config);
+        SubscriberFactory subscriberFactory = new SubscriberFactory(config, credentialsProviderFactory, channelProviderFactory);
+        // Only used for dead-lettering, which does not happen in this benchmark.
+        publisherRegistry = new PublisherRegistry(config, new PublisherFactory(config, credentialsProviderFactory, channelProviderFactory,
+            new PubSubMetrics(new SimpleMeterRegistry())));
+
+        subscriber = new DummyMessageSubscriber(config, subscriberFactory, new PubsubMessageReader(codecRegistry),
+            new RingBufferMessageSink<>(config.getSinkCapacity(), config.getSinkFullPolicy()),
+            new PubSubMetrics(new SimpleMeterRegistry()), Optional.empty(), Optional.empty(), Optional.empty(), publisherRegistry);
+        pubsubMessage = new PubsubMessageMapper(codecRegistry).apply(BenchmarkFixtures.createMessage(payloadSize), contentType);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        subscriber.preDestroy();
+        publisherRegistry.preDestroy();
+        channelProviderFactory.close();
+    }
+
+    @Benchmark
+    public void receiveMessage(Blackhole blackhole) {
+        subscriber.receiveMessage(pubsubMessage, new BlackholeAckReplyConsumer(blackhole));
+    }
+
+    private static class BlackholeAckReplyConsumer implements AckReplyConsumer {
+
+        private final Blackhole blackhole;
+
+        BlackholeAckReplyConsumer(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void ack() {
+            blackhole.consume(true);
+        }
+
+        @Override
+        public void nack() {
+            blackhole.consume(false);
+        }
+    }
+}
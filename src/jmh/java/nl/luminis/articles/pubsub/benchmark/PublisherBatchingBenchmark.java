@@ -0,0 +1,89 @@
+package nl.luminis.articles.pubsub.benchmark;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.auth.TransportChannelProviderFactory;
+import nl.luminis.articles.pubsub.codec.ContentTypes;
+import nl.luminis.articles.pubsub.fake.FakePubSubServer;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageMapper;
+import nl.luminis.articles.pubsub.publisher.PublisherProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the client-side cost of batching published messages, against the in-process fake Pub/Sub server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PublisherBatchingBenchmark {
+
+    private static final int MESSAGES_PER_INVOCATION = 1000;
+
+    @Param({"1", "10", "100", "1000"})
+    public long elementCountThreshold;
+    @Param({"64", "1024", "16384"})
+    public int payloadSize;
+
+    private FakePubSubServer server;
+    private TransportChannelProviderFactory channelProviderFactory;
+    private Publisher publisher;
+    private PubsubMessage message;
+
+    @Setup
+    public void setUp() throws Exception {
+        PubSubConfig config = BenchmarkFixtures.createPubSubConfig();
+        server = FakePubSubServer.start("publisher-batching-benchmark", config.getGcpProjectName(),
+            "[{\"name\": \"" + config.getTopicName() + "\"}]");
+        config.setPubSubUrl(server.getUrl());
+        channelProviderFactory = new TransportChannelProviderFactory(config);
+
+        PublisherProperties properties = PublisherProperties
+            .builder()
+            .elementCountThreshold(elementCountThreshold)
+            .requestByteThreshold(10L * 1024L * 1024L)
+            .delayThresholdMillis(1L)
+            .contentType(ContentTypes.JSON)
+            .build();
+        publisher = Publisher
+            .newBuilder(config.getProjectTopicName())
+            .setCredentialsProvider(NoCredentialsProvider.create())
+            .setChannelProvider(channelProviderFactory.create())
+            .setBatchingSettings(properties.toBatchingSettings())
+            .build();
+        message = new PubsubMessageMapper(BenchmarkFixtures.createCodecRegistry()).apply(BenchmarkFixtures.createMessage(payloadSize));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        publisher.shutdown();
+        publisher.awaitTermination(10, TimeUnit.SECONDS);
+        channelProviderFactory.close();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_INVOCATION)
+    public List<String> publish() throws Exception {
+        List<ApiFuture<String>> futures = new ArrayList<>(MESSAGES_PER_INVOCATION);
+        for (int i = 0; i < MESSAGES_PER_INVOCATION; i++) {
+            futures.add(publisher.publish(message));
+        }
+        return ApiFutures.allAsList(futures).get();
+    }
+}
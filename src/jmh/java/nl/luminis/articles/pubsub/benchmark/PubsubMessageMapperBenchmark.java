@@ -0,0 +1,44 @@
+package nl.luminis.articles.pubsub.benchmark;
+
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.concurrent.TimeUnit;
+import nl.luminis.articles.pubsub.codec.ContentEncoding;
+import nl.luminis.articles.pubsub.codec.ContentTypes;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PubsubMessageMapperBenchmark {
+
+    @Param({"64", "1024", "16384", "262144"})
+    public int payloadSize;
+    @Param({ContentTypes.JSON, ContentTypes.SMILE, ContentTypes.CBOR, ContentTypes.PROTOBUF})
+    public String contentType;
+    @Param({"NONE", "GZIP", "LZ4"})
+    public ContentEncoding contentEncoding;
+
+    private PubsubMessageMapper mapper;
+    private DummyMessage message;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.createPubSubConfig();
+        mapper = new PubsubMessageMapper(BenchmarkFixtures.createCodecRegistry());
+        message = BenchmarkFixtures.createMessage(payloadSize);
+    }
+
+    @Benchmark
+    public PubsubMessage apply() {
+        return mapper.apply(message, contentType, "", contentEncoding, 0);
+    }
+}
@@ -1,8 +1,12 @@
 package nl.luminis.articles.pubsub;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.subscriber.sink.MessageSink;
+import nl.luminis.articles.pubsub.subscriber.sink.RingBufferMessageSink;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
@@ -16,4 +20,11 @@ public class Application {
     public ObjectMapper createObjectMapper() {
         return new ObjectMapper();
     }
+
+    // Declare another MessageSink bean to replace the default ring buffer.
+    @Bean
+    @ConditionalOnMissingBean(MessageSink.class)
+    public MessageSink<DummyMessage> createMessageSink(PubSubConfig pubSubConfig) {
+        return new RingBufferMessageSink<>(pubSubConfig.getSinkCapacity(), pubSubConfig.getSinkFullPolicy());
+    }
 }
@@ -2,17 +2,37 @@ package nl.luminis.articles.pubsub;
 
 import com.google.pubsub.v1.ProjectSubscriptionName;
 import com.google.pubsub.v1.ProjectTopicName;
+import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
 import nl.luminis.articles.pubsub.auth.AuthenticationMethod;
+import nl.luminis.articles.pubsub.auth.ChannelProperties;
+import nl.luminis.articles.pubsub.publisher.PublisherProperties;
+import nl.luminis.articles.pubsub.subscriber.SubscriberProperties;
+import nl.luminis.articles.pubsub.subscriber.routing.RoutingRule;
+import nl.luminis.articles.pubsub.subscriber.sink.FullSinkPolicy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
 @Getter
 @Setter
 @Configuration
 public class PubSubConfig {
 
+    private static final String TOPIC_DEFAULTS_PREFIX = "gcloud.pubsub.topic.";
+    private static final String TOPIC_OVERRIDES_PREFIX = "gcloud.pubsub.topics.";
+    private static final String SUBSCRIPTION_DEFAULTS_PREFIX = "gcloud.pubsub.subscription.";
+    private static final String SUBSCRIPTION_OVERRIDES_PREFIX = "gcloud.pubsub.subscriptions.";
+    private static final String CHANNEL_PREFIX = "gcloud.pubsub.channel.";
+
+    @Autowired
+    private Environment environment;
+
     @Value("${gcloud.project.name}")
     private String gcpProjectName;
     @Value("${gcloud.authentication.method}")
@@ -26,12 +46,159 @@ public class PubSubConfig {
     private String topicName;
     @Value("${gcloud.pubsub.subscription.name}")
     private String subscriptionName;
+    @Value("${gcloud.pubsub.publisher.max-outstanding-messages:10000}")
+    private int maxOutstandingPublishes;
+    @Value("${gcloud.pubsub.publisher.reactive.max-in-flight:256}")
+    private int maxInFlightReactivePublishes;
+    @Value("${gcloud.pubsub.publisher.stream.max-in-flight:1000}")
+    private int maxInFlightStreamPublishes;
+    @Value("${gcloud.pubsub.publisher.registry.maximum-size:100}")
+    private long publisherRegistryMaximumSize;
+    @Value("${gcloud.pubsub.publisher.registry.idle-timeout-seconds:600}")
+    private long publisherRegistryIdleTimeoutSeconds;
+    @Value("${gcloud.pubsub.publisher.spool.directory:spool}")
+    private String spoolDirectory;
+    @Value("${gcloud.pubsub.publisher.spool.segment-size-bytes:67108864}")
+    private int spoolSegmentSizeBytes;
+    @Value("${gcloud.pubsub.publisher.spool.max-segments:16}")
+    private int spoolMaxSegments;
+    @Value("${gcloud.pubsub.publisher.spool.replay-interval-millis:1000}")
+    private long spoolReplayIntervalMillis;
+    @Value("${gcloud.pubsub.publisher.spool.replay-batch-size:500}")
+    private int spoolReplayBatchSize;
+    @Value("${gcloud.pubsub.publisher.spool.replay-timeout-seconds:60}")
+    private long spoolReplayTimeoutSeconds;
+    @Value("${gcloud.pubsub.claim-check.directory:claim-check}")
+    private String claimCheckDirectory;
+    @Value("${gcloud.pubsub.subscription.sink.capacity:10000}")
+    private int sinkCapacity;
+    @Value("${gcloud.pubsub.subscription.sink.full-policy:NACK}")
+    private FullSinkPolicy sinkFullPolicy;
 
     public ProjectTopicName getProjectTopicName() {
-        return ProjectTopicName.of(gcpProjectName, topicName);
+        return getProjectTopicName(topicName);
+    }
+
+    public ProjectTopicName getProjectTopicName(String topic) {
+        return ProjectTopicName.of(gcpProjectName, topic);
     }
 
     public ProjectSubscriptionName getProjectSubscriptionName() {
-        return ProjectSubscriptionName.of(gcpProjectName, subscriptionName);
+        return getProjectSubscriptionName(subscriptionName);
+    }
+
+    public ProjectSubscriptionName getProjectSubscriptionName(String subscription) {
+        return ProjectSubscriptionName.of(gcpProjectName, subscription);
+    }
+
+    public PublisherProperties getPublisherProperties(String topic) {
+        return PublisherProperties
+            .builder()
+            .elementCountThreshold(getTopicProperty(topic, "batching.element-count-threshold", PublisherProperties.DEFAULT_ELEMENT_COUNT_THRESHOLD))
+            .requestByteThreshold(getTopicProperty(topic, "batching.request-byte-threshold", PublisherProperties.DEFAULT_REQUEST_BYTE_THRESHOLD))
+            .delayThresholdMillis(getTopicProperty(topic, "batching.delay-threshold-millis", PublisherProperties.DEFAULT_DELAY_THRESHOLD_MILLIS))
+            .contentType(getTopicProperty(topic, "content-type", PublisherProperties.DEFAULT_CONTENT_TYPE))
+            .enableMessageOrdering(getTopicProperty(topic, "enable-message-ordering",
+                PublisherProperties.DEFAULT_ENABLE_MESSAGE_ORDERING))
+            .compressionEncoding(getTopicProperty(topic, "compression.encoding", PublisherProperties.DEFAULT_COMPRESSION_ENCODING))
+            .compressionMinSizeBytes(getTopicProperty(topic, "compression.min-size-bytes",
+                PublisherProperties.DEFAULT_COMPRESSION_MIN_SIZE_BYTES))
+            .claimCheckThresholdBytes(getTopicProperty(topic, "claim-check.threshold-bytes",
+                PublisherProperties.DEFAULT_CLAIM_CHECK_THRESHOLD_BYTES))
+            .build();
+    }
+
+    public SubscriberProperties getSubscriberProperties(String subscription) {
+        return SubscriberProperties
+            .builder()
+            .maxOutstandingElementCount(getSubscriptionProperty(subscription, "flow-control.max-outstanding-element-count",
+                SubscriberProperties.DEFAULT_MAX_OUTSTANDING_ELEMENT_COUNT))
+            .maxOutstandingRequestBytes(getSubscriptionProperty(subscription, "flow-control.max-outstanding-request-bytes",
+                SubscriberProperties.DEFAULT_MAX_OUTSTANDING_REQUEST_BYTES))
+            .parallelPullCount(getSubscriptionProperty(subscription, "parallel-pull-count", SubscriberProperties.DEFAULT_PARALLEL_PULL_COUNT))
+            .executorThreadCount(getSubscriptionProperty(subscription, "executor-thread-count", SubscriberProperties.DEFAULT_EXECUTOR_THREAD_COUNT))
+            .maxAckExtensionPeriodSeconds(getSubscriptionProperty(subscription, "max-ack-extension-period-seconds",
+                SubscriberProperties.DEFAULT_MAX_ACK_EXTENSION_PERIOD_SECONDS))
+            .messageOrdering(getSubscriptionProperty(subscription, "message-ordering", SubscriberProperties.DEFAULT_MESSAGE_ORDERING))
+            .orderingStripeCount(getSubscriptionProperty(subscription, "ordering-stripe-count",
+                SubscriberProperties.DEFAULT_ORDERING_STRIPE_COUNT))
+            .batchMaxMessages(getSubscriptionProperty(subscription, "batch.max-messages", SubscriberProperties.DEFAULT_BATCH_MAX_MESSAGES))
+            .batchMaxBytes(getSubscriptionProperty(subscription, "batch.max-bytes", SubscriberProperties.DEFAULT_BATCH_MAX_BYTES))
+            .batchMaxDelayMillis(getSubscriptionProperty(subscription, "batch.max-delay-millis",
+                SubscriberProperties.DEFAULT_BATCH_MAX_DELAY_MILLIS))
+            .deduplicationKey(getSubscriptionProperty(subscription, "deduplication.key", SubscriberProperties.DEFAULT_DEDUPLICATION_KEY))
+            .deduplicationMaxEntries(getSubscriptionProperty(subscription, "deduplication.max-entries",
+                SubscriberProperties.DEFAULT_DEDUPLICATION_MAX_ENTRIES))
+            .deduplicationTtlSeconds(getSubscriptionProperty(subscription, "deduplication.ttl-seconds",
+                SubscriberProperties.DEFAULT_DEDUPLICATION_TTL_SECONDS))
+            .retryMaxAttempts(getSubscriptionProperty(subscription, "retry.max-attempts", SubscriberProperties.DEFAULT_RETRY_MAX_ATTEMPTS))
+            .retryInitialBackoffMillis(getSubscriptionProperty(subscription, "retry.initial-backoff-millis",
+                SubscriberProperties.DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS))
+            .retryMaxBackoffMillis(getSubscriptionProperty(subscription, "retry.max-backoff-millis",
+                SubscriberProperties.DEFAULT_RETRY_MAX_BACKOFF_MILLIS))
+            .retryBackoffMultiplier(getSubscriptionProperty(subscription, "retry.backoff-multiplier",
+                SubscriberProperties.DEFAULT_RETRY_BACKOFF_MULTIPLIER))
+            .retryMaxTrackedMessages(getSubscriptionProperty(subscription, "retry.max-tracked-messages",
+                SubscriberProperties.DEFAULT_RETRY_MAX_TRACKED_MESSAGES))
+            .deadLetterTopic(getSubscriptionProperty(subscription, "dead-letter-topic", SubscriberProperties.DEFAULT_DEAD_LETTER_TOPIC))
+            .pullMaxMessages(getSubscriptionProperty(subscription, "pull.max-messages", SubscriberProperties.DEFAULT_PULL_MAX_MESSAGES))
+            .pullConcurrency(getSubscriptionProperty(subscription, "pull.concurrency", SubscriberProperties.DEFAULT_PULL_CONCURRENCY))
+            .pullAckBatchSize(getSubscriptionProperty(subscription, "pull.ack-batch-size",
+                SubscriberProperties.DEFAULT_PULL_ACK_BATCH_SIZE))
+            .pullMaxEmptyPulls(getSubscriptionProperty(subscription, "pull.max-empty-pulls",
+                SubscriberProperties.DEFAULT_PULL_MAX_EMPTY_PULLS))
+            .pullTimeoutSeconds(getSubscriptionProperty(subscription, "pull.timeout-seconds",
+                SubscriberProperties.DEFAULT_PULL_TIMEOUT_SECONDS))
+            .claimCheckDeleteAfterAck(getSubscriptionProperty(subscription, "claim-check.delete-after-ack",
+                SubscriberProperties.DEFAULT_CLAIM_CHECK_DELETE_AFTER_ACK))
+            .build();
+    }
+
+    /**
+     * Rules for a single subscription replace the default rules as a whole, as merging two lists of rules by index would be confusing.
+     */
+    public List<RoutingRule> getRoutingRules(String subscription) {
+        Binder binder = Binder.get(environment);
+        Bindable<List<RoutingRule>> rules = Bindable.listOf(RoutingRule.class);
+        String overrides = SUBSCRIPTION_OVERRIDES_PREFIX + subscription + ".routing.rules";
+        // Subscription names may contain characters that property names cannot, those subscriptions can only use the default rules.
+        List<RoutingRule> subscriptionRules = ConfigurationPropertyName.isValid(overrides) ? binder.bind(overrides, rules).orElse(null) : null;
+        return subscriptionRules != null
+            ? subscriptionRules
+            : binder.bind(SUBSCRIPTION_DEFAULTS_PREFIX + "routing.rules", rules).orElse(List.of());
+    }
+
+    public ChannelProperties getChannelProperties() {
+        return ChannelProperties
+            .builder()
+            .channelCount(getChannelProperty("count", ChannelProperties.DEFAULT_CHANNEL_COUNT))
+            .keepAliveTimeSeconds(getChannelProperty("keep-alive-time-seconds", ChannelProperties.DEFAULT_KEEP_ALIVE_TIME_SECONDS))
+            .keepAliveTimeoutSeconds(getChannelProperty("keep-alive-timeout-seconds", ChannelProperties.DEFAULT_KEEP_ALIVE_TIMEOUT_SECONDS))
+            .idleTimeoutSeconds(getChannelProperty("idle-timeout-seconds", ChannelProperties.DEFAULT_IDLE_TIMEOUT_SECONDS))
+            .maxInboundMessageSize(getChannelProperty("max-inbound-message-size", ChannelProperties.DEFAULT_MAX_INBOUND_MESSAGE_SIZE))
+            .eventLoopThreadCount(getChannelProperty("event-loop-thread-count", ChannelProperties.DEFAULT_EVENT_LOOP_THREAD_COUNT))
+            .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getChannelProperty(String key, T defaultValue) {
+        return environment.getProperty(CHANNEL_PREFIX + key, (Class<T>) defaultValue.getClass(), defaultValue);
+    }
+
+    private <T> T getTopicProperty(String topic, String key, T defaultValue) {
+        return getProperty(TOPIC_DEFAULTS_PREFIX, TOPIC_OVERRIDES_PREFIX + topic + ".", key, defaultValue);
+    }
+
+    private <T> T getSubscriptionProperty(String subscription, String key, T defaultValue) {
+        return getProperty(SUBSCRIPTION_DEFAULTS_PREFIX, SUBSCRIPTION_OVERRIDES_PREFIX + subscription + ".", key, defaultValue);
+    }
+
+    // A setting for a specific topic or subscription (e.g. gcloud.pubsub.topics.<topic>.<key>) takes precedence over the default for all of them
+    // (e.g. gcloud.pubsub.topic.<key>).
+    @SuppressWarnings("unchecked")
+    private <T> T getProperty(String defaultsPrefix, String overridesPrefix, String key, T defaultValue) {
+        Class<T> type = (Class<T>) defaultValue.getClass();
+        T fallback = environment.getProperty(defaultsPrefix + key, type, defaultValue);
+        return environment.getProperty(overridesPrefix + key, type, fallback);
     }
 }
@@ -0,0 +1,30 @@
+package nl.luminis.articles.pubsub.actuator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import nl.luminis.articles.pubsub.subscriber.SubscriberFactory;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+@Component
+@Endpoint(id = "pubsub")
+public class PubSubEndpoint {
+
+    private final PublisherRegistry publisherRegistry;
+    private final SubscriberFactory subscriberFactory;
+
+    public PubSubEndpoint(PublisherRegistry publisherRegistry, SubscriberFactory subscriberFactory) {
+        this.publisherRegistry = publisherRegistry;
+        this.subscriberFactory = subscriberFactory;
+    }
+
+    @ReadOperation
+    public Map<String, Object> settings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("publishers", publisherRegistry.getEffectiveProperties());
+        settings.put("subscribers", subscriberFactory.getEffectiveProperties());
+        return settings;
+    }
+}
@@ -0,0 +1,26 @@
+package nl.luminis.articles.pubsub.auth;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class ChannelProperties {
+
+    // Keepalive time and maximum message size are the defaults of the client library's subscriber, which needs the keepalive for its
+    // long-lived streaming pulls, and which guards against oversized responses with a limit of twice the maximum Pub/Sub message size.
+    // The keepalive timeout and idle timeout are the gRPC defaults.
+    public static final int DEFAULT_CHANNEL_COUNT = 4;
+    public static final long DEFAULT_KEEP_ALIVE_TIME_SECONDS = 5L * 60L;
+    public static final long DEFAULT_KEEP_ALIVE_TIMEOUT_SECONDS = 20L;
+    public static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 30L * 60L;
+    public static final int DEFAULT_MAX_INBOUND_MESSAGE_SIZE = 20 * 1024 * 1024;
+    public static final int DEFAULT_EVENT_LOOP_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private int channelCount;
+    private long keepAliveTimeSeconds;
+    private long keepAliveTimeoutSeconds;
+    private long idleTimeoutSeconds;
+    private int maxInboundMessageSize;
+    private int eventLoopThreadCount;
+}
@@ -5,24 +5,115 @@ import com.google.api.gax.rpc.FixedTransportChannelProvider;
 import com.google.api.gax.rpc.TransportChannelProvider;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import nl.luminis.articles.pubsub.PubSubConfig;
 import org.springframework.stereotype.Service;
 
+/**
+ * Hands out a single pool of channels to all publishers, subscribers and admin clients. The channels are created on first use and shut
+ * down when the application context closes; the clients themselves never close them, as a {@link FixedTransportChannelProvider} is not
+ * auto-closed.
+ */
+@Slf4j
 @Service
 public class TransportChannelProviderFactory {
 
-    private PubSubConfig pubSubConfig;
+    // A Pub/Sub URL like in-process:my-server connects to a gRPC server with that name running in the same JVM.
+    public static final String IN_PROCESS_PREFIX = "in-process:";
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10L;
+
+    private final PubSubConfig pubSubConfig;
+    private EventLoopGroup eventLoopGroup;
+    private ManagedChannelPool channelPool;
 
     public TransportChannelProviderFactory(PubSubConfig pubSubConfig) {
         this.pubSubConfig = pubSubConfig;
     }
 
     public TransportChannelProvider create() {
-        ManagedChannelBuilder<?> channelBuilder = ManagedChannelBuilder.forTarget(pubSubConfig.getPubSubUrl());
+        return FixedTransportChannelProvider.create(GrpcTransportChannel.create(getChannelPool()));
+    }
+
+    public synchronized ManagedChannelPool getChannelPool() {
+        if (channelPool == null) {
+            ChannelProperties properties = pubSubConfig.getChannelProperties();
+            log.info("Creating channel pool for {} with {}", pubSubConfig.getPubSubUrl(), properties);
+
+            List<ManagedChannel> channels = new ArrayList<>(properties.getChannelCount());
+            for (int i = 0; i < properties.getChannelCount(); i++) {
+                channels.add(createChannelBuilder(properties).build());
+            }
+            channelPool = new ManagedChannelPool(channels);
+        }
+        return channelPool;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (channelPool != null) {
+            channelPool.shutdown();
+            try {
+                if (!channelPool.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("Channels did not terminate within {} seconds, cancelling remaining calls", SHUTDOWN_TIMEOUT_SECONDS);
+                    channelPool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                channelPool.shutdownNow();
+            }
+            channelPool = null;
+        }
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully(0, SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            eventLoopGroup = null;
+        }
+    }
+
+    private ManagedChannelBuilder<?> createChannelBuilder(ChannelProperties properties) {
+        String url = pubSubConfig.getPubSubUrl();
+        if (url.startsWith(IN_PROCESS_PREFIX)) {
+            return InProcessChannelBuilder
+                .forName(url.substring(IN_PROCESS_PREFIX.length()))
+                .maxInboundMessageSize(properties.getMaxInboundMessageSize());
+        }
+
+        NettyChannelBuilder channelBuilder = NettyChannelBuilder
+            .forTarget(url)
+            .keepAliveTime(properties.getKeepAliveTimeSeconds(), TimeUnit.SECONDS)
+            .keepAliveTimeout(properties.getKeepAliveTimeoutSeconds(), TimeUnit.SECONDS)
+            .idleTimeout(properties.getIdleTimeoutSeconds(), TimeUnit.SECONDS)
+            .maxInboundMessageSize(properties.getMaxInboundMessageSize())
+            // All channels share one event loop group, instead of each creating threads of their own.
+            .eventLoopGroup(getEventLoopGroup(properties))
+            .channelType(Epoll.isAvailable() ? EpollSocketChannel.class : NioSocketChannel.class);
         if (AuthenticationMethod.NONE.equals(pubSubConfig.getAuthenticationMethod())) {
             channelBuilder.usePlaintext();
         }
-        ManagedChannel channel = channelBuilder.build();
-        return FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel));
+        return channelBuilder;
+    }
+
+    private EventLoopGroup getEventLoopGroup(ChannelProperties properties) {
+        if (eventLoopGroup == null) {
+            ThreadFactory threadFactory = new DefaultThreadFactory("pubsub-grpc", true);
+            eventLoopGroup = Epoll.isAvailable()
+                ? new EpollEventLoopGroup(properties.getEventLoopThreadCount(), threadFactory)
+                : new NioEventLoopGroup(properties.getEventLoopThreadCount(), threadFactory);
+        }
+        return eventLoopGroup;
     }
 }
@@ -0,0 +1,26 @@
+package nl.luminis.articles.pubsub.claimcheck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Stores payloads that are too large to send through Pub/Sub efficiently. The message only carries the reference that {@link #put} returns,
+ * which the subscriber uses to fetch the payload.
+ */
+public interface BlobStore {
+
+    /**
+     * @return the reference to the stored bytes, which is unique for every call
+     */
+    String put(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * @return the stored bytes as a read-only buffer, or null when no blob with the reference exists
+     */
+    ByteBuffer get(String reference) throws IOException;
+
+    /**
+     * Does nothing when no blob with the reference exists, so that a redelivered message can be deleted twice.
+     */
+    void delete(String reference) throws IOException;
+}
@@ -0,0 +1,18 @@
+package nl.luminis.articles.pubsub.claimcheck;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ClaimCheckConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "gcloud.pubsub.claim-check.enabled", havingValue = "true")
+    public BlobStore createFileSystemBlobStore(PubSubConfig pubSubConfig) throws IOException {
+        return new FileSystemBlobStore(Paths.get(pubSubConfig.getClaimCheckDirectory()));
+    }
+}
@@ -0,0 +1,69 @@
+package nl.luminis.articles.pubsub.claimcheck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps every blob in its own file in a directory, which is meant for local testing or for a directory that all publishers and subscribers
+ * have mounted. Blobs are read by mapping their file into memory, so their bytes are not copied onto the heap.
+ */
+public class FileSystemBlobStore implements BlobStore {
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    // References end up in file names, so anything else than a UUID is refused to keep them inside the directory.
+    private static final Pattern REFERENCE = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    private final Path directory;
+
+    public FileSystemBlobStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public String put(byte[] data, int offset, int length) throws IOException {
+        String reference = UUID.randomUUID().toString();
+        Path temporary = directory.resolve(reference + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        // A subscriber that receives the reference must never see a partially written file.
+        Files.move(temporary, resolve(reference), StandardCopyOption.ATOMIC_MOVE);
+        return reference;
+    }
+
+    @Override
+    public ByteBuffer get(String reference) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(reference), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed, and even after the file is deleted, until the buffer is garbage collected.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void delete(String reference) throws IOException {
+        Files.deleteIfExists(resolve(reference));
+    }
+
+    private Path resolve(String reference) {
+        if (!REFERENCE.matcher(reference).matches()) {
+            throw new IllegalArgumentException("Invalid blob reference " + reference);
+        }
+        return directory.resolve(reference);
+    }
+}
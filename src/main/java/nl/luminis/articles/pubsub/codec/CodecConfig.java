@@ -0,0 +1,31 @@
+package nl.luminis.articles.pubsub.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CodecConfig {
+
+    @Bean
+    public PayloadCodec createJsonCodec(ObjectMapper objectMapper) {
+        return new JacksonPayloadCodec(ContentTypes.JSON, objectMapper);
+    }
+
+    @Bean
+    public PayloadCodec createSmileCodec() {
+        return new JacksonPayloadCodec(ContentTypes.SMILE, new ObjectMapper(new SmileFactory()));
+    }
+
+    @Bean
+    public PayloadCodec createCborCodec() {
+        return new JacksonPayloadCodec(ContentTypes.CBOR, new ObjectMapper(new CBORFactory()));
+    }
+
+    @Bean
+    public PayloadCodec createProtobufCodec() {
+        return new DummyMessageProtobufCodec();
+    }
+}
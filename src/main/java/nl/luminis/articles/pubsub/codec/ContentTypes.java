@@ -0,0 +1,12 @@
+package nl.luminis.articles.pubsub.codec;
+
+public final class ContentTypes {
+
+    public static final String JSON = "application/json";
+    public static final String SMILE = "application/x-jackson-smile";
+    public static final String CBOR = "application/cbor";
+    public static final String PROTOBUF = "application/x-protobuf";
+
+    private ContentTypes() {
+    }
+}
@@ -0,0 +1,108 @@
+package nl.luminis.articles.pubsub.codec;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+
+/**
+ * Encodes {@link DummyMessage} according to the schema in src/main/proto/dummy_message.proto. The fields are written by hand with the
+ * Protobuf runtime, so that the DTO can stay a plain Lombok class and no code generation is needed.
+ */
+public class DummyMessageProtobufCodec implements PayloadCodec {
+
+    // A tag is the field number shifted left by three bits, combined with the wire type (0 for varints, 2 for length-delimited fields).
+    private static final int ID_TAG = 1 << 3;
+    private static final int MESSAGE_TAG = 2 << 3 | 2;
+    private static final int TIMESTAMP_TAG = 3 << 3;
+    private static final int TYPE_TAG = 4 << 3 | 2;
+    private static final int TENANT_TAG = 5 << 3 | 2;
+
+    @Override
+    public String getContentType() {
+        return ContentTypes.PROTOBUF;
+    }
+
+    @Override
+    public void encode(Object value, OutputStream output) throws IOException {
+        if (!(value instanceof DummyMessage)) {
+            throw new IllegalArgumentException("Protobuf encoding is only supported for DummyMessage, got " + value.getClass().getName());
+        }
+        DummyMessage message = (DummyMessage) value;
+
+        // Like generated Protobuf code, fields with a default value are not written.
+        boolean hasId = message.getId() != 0L;
+        boolean hasMessage = message.getMessage() != null && !message.getMessage().isEmpty();
+        boolean hasTimestamp = message.getTimestamp() != 0L;
+        boolean hasType = message.getType() != null && !message.getType().isEmpty();
+        boolean hasTenant = message.getTenant() != null && !message.getTenant().isEmpty();
+        int size = (hasId ? CodedOutputStream.computeInt64Size(1, message.getId()) : 0)
+            + (hasMessage ? CodedOutputStream.computeStringSize(2, message.getMessage()) : 0)
+            + (hasTimestamp ? CodedOutputStream.computeInt64Size(3, message.getTimestamp()) : 0)
+            + (hasType ? CodedOutputStream.computeStringSize(4, message.getType()) : 0)
+            + (hasTenant ? CodedOutputStream.computeStringSize(5, message.getTenant()) : 0);
+        if (size == 0) {
+            return;
+        }
+
+        // Size the intermediate buffer to the message, instead of allocating the default 4 KB for every message.
+        CodedOutputStream coded = CodedOutputStream.newInstance(output, size);
+        if (hasId) {
+            coded.writeInt64(1, message.getId());
+        }
+        if (hasMessage) {
+            coded.writeString(2, message.getMessage());
+        }
+        if (hasTimestamp) {
+            coded.writeInt64(3, message.getTimestamp());
+        }
+        if (hasType) {
+            coded.writeString(4, message.getType());
+        }
+        if (hasTenant) {
+            coded.writeString(5, message.getTenant());
+        }
+        coded.flush();
+    }
+
+    @Override
+    public <T> T decode(InputStream input, Class<T> type) throws IOException {
+        if (!type.isAssignableFrom(DummyMessage.class)) {
+            throw new IllegalArgumentException("Protobuf decoding is only supported for DummyMessage, got " + type.getName());
+        }
+
+        CodedInputStream coded = CodedInputStream.newInstance(input);
+        DummyMessage message = new DummyMessage();
+        boolean done = false;
+        while (!done) {
+            int tag = coded.readTag();
+            switch (tag) {
+                case 0:
+                    done = true;
+                    break;
+                case ID_TAG:
+                    message.setId(coded.readInt64());
+                    break;
+                case MESSAGE_TAG:
+                    message.setMessage(coded.readStringRequireUtf8());
+                    break;
+                case TIMESTAMP_TAG:
+                    message.setTimestamp(coded.readInt64());
+                    break;
+                case TYPE_TAG:
+                    message.setType(coded.readStringRequireUtf8());
+                    break;
+                case TENANT_TAG:
+                    message.setTenant(coded.readStringRequireUtf8());
+                    break;
+                default:
+                    // Unknown fields are skipped, so that fields added to the schema later do not break older subscribers.
+                    done = !coded.skipField(tag);
+                    break;
+            }
+        }
+        return type.cast(message);
+    }
+}
@@ -0,0 +1,32 @@
+package nl.luminis.articles.pubsub.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class JacksonPayloadCodec implements PayloadCodec {
+
+    private final String contentType;
+    private final ObjectMapper mapper;
+
+    public JacksonPayloadCodec(String contentType, ObjectMapper mapper) {
+        this.contentType = contentType;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public void encode(Object value, OutputStream output) throws IOException {
+        mapper.writeValue(output, value);
+    }
+
+    @Override
+    public <T> T decode(InputStream input, Class<T> type) throws IOException {
+        return mapper.readValue(input, type);
+    }
+}
@@ -0,0 +1,18 @@
+package nl.luminis.articles.pubsub.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts objects from and to the payload of a Pub/Sub message. The content type is stored as an attribute of every published message, so
+ * that subscribers can select the matching codec.
+ */
+public interface PayloadCodec {
+
+    String getContentType();
+
+    void encode(Object value, OutputStream output) throws IOException;
+
+    <T> T decode(InputStream input, Class<T> type) throws IOException;
+}
@@ -0,0 +1,29 @@
+package nl.luminis.articles.pubsub.codec;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.stereotype.Service;
+
+@Service
+public class PayloadCodecRegistry {
+
+    // Messages that were published before content types were introduced carry no content type attribute and contain JSON.
+    public static final String DEFAULT_CONTENT_TYPE = ContentTypes.JSON;
+
+    private final Map<String, PayloadCodec> codecs;
+
+    public PayloadCodecRegistry(List<PayloadCodec> codecs) {
+        this.codecs = codecs.stream().collect(Collectors.toMap(PayloadCodec::getContentType, Function.identity()));
+    }
+
+    public Optional<PayloadCodec> findCodec(String contentType) {
+        return Optional.ofNullable(codecs.get(contentType == null || contentType.isEmpty() ? DEFAULT_CONTENT_TYPE : contentType));
+    }
+
+    public PayloadCodec getCodec(String contentType) {
+        return findCodec(contentType).orElseThrow(() -> new IllegalArgumentException("Unsupported content type " + contentType));
+    }
+}
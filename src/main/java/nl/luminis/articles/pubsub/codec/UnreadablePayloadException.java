@@ -0,0 +1,18 @@
+package nl.luminis.articles.pubsub.codec;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the payload of a message cannot be decoded, either because it is malformed or because its content type is not supported.
+ * Redelivering such a message will not help.
+ */
+public class UnreadablePayloadException extends IOException {
+
+    public UnreadablePayloadException(String message) {
+        super(message);
+    }
+
+    public UnreadablePayloadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import nl.luminis.articles.pubsub.mapper.MessageAttribute;
+import nl.luminis.articles.pubsub.mapper.MessageAttributes;
 
 @Getter
 @Setter
@@ -15,4 +17,11 @@ public class DummyMessage {
 
     private long id;
     private String message;
+    // Epoch time in microseconds at which the message was created, used to measure the latency between publishing and receiving it.
+    private long timestamp;
+    // Published as attributes as well, so that subscribers can skip or route messages without parsing them.
+    @MessageAttribute(MessageAttributes.TYPE)
+    private String type;
+    @MessageAttribute(MessageAttributes.TENANT)
+    private String tenant;
 }
@@ -0,0 +1,21 @@
+package nl.luminis.articles.pubsub.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PublishResult {
+
+    private long id;
+    private String messageId;
+    // Set instead of the message ID when the message was spooled to be published later.
+    private boolean spooled;
+    private String error;
+}
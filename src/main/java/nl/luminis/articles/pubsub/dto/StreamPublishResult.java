@@ -0,0 +1,20 @@
+package nl.luminis.articles.pubsub.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StreamPublishResult {
+
+    private long accepted;
+    private long failed;
+    // Set when the input could not be parsed; the accepted and failed messages are the ones before that point.
+    private String error;
+}
@@ -0,0 +1,54 @@
+package nl.luminis.articles.pubsub.mapper;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads the fields annotated with {@link MessageAttribute}. The annotated fields of a class are looked up once and cached in an array, so
+ * extracting them allocates nothing beyond the attribute values.
+ */
+class AttributeExtractor {
+
+    private static final ClassValue<AttributeField[]> FIELDS = new ClassValue<>() {
+        @Override
+        protected AttributeField[] computeValue(Class<?> type) {
+            List<AttributeField> fields = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    MessageAttribute attribute = field.getAnnotation(MessageAttribute.class);
+                    if (attribute != null) {
+                        field.setAccessible(true);
+                        fields.add(new AttributeField(attribute.value(), field));
+                    }
+                }
+            }
+            return fields.toArray(new AttributeField[0]);
+        }
+    };
+
+    void extract(Object pojo, BiConsumer<String, String> attributes) {
+        for (AttributeField field : FIELDS.get(pojo.getClass())) {
+            try {
+                Object value = field.field.get(pojo);
+                if (value != null) {
+                    attributes.accept(field.name, value.toString());
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read attribute " + field.name + " of " + pojo.getClass().getName(), e);
+            }
+        }
+    }
+
+    private static class AttributeField {
+
+        private final String name;
+        private final Field field;
+
+        AttributeField(String name, Field field) {
+            this.name = name;
+            this.field = field;
+        }
+    }
+}
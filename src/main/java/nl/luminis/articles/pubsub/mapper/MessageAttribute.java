@@ -0,0 +1,20 @@
+package nl.luminis.articles.pubsub.mapper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Copies the value of a field into a Pub/Sub message attribute when the object is published, so that subscribers can route the message
+ * without reading its payload. Null values are left out.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface MessageAttribute {
+
+    /**
+     * The name of the attribute.
+     */
+    String value();
+}
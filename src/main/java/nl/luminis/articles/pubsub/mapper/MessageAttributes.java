@@ -0,0 +1,25 @@
+package nl.luminis.articles.pubsub.mapper;
+
+/**
+ * Names of the Pub/Sub message attributes that describe how the payload of a message was written, what it is about, or why it was
+ * dead-lettered.
+ */
+public final class MessageAttributes {
+
+    public static final String CONTENT_TYPE = "content-type";
+    public static final String CONTENT_ENCODING = "content-encoding";
+    // Reference to the payload in the blob store, for messages whose payload was too large to send along.
+    public static final String CLAIM_CHECK = "claim-check";
+
+    public static final String TYPE = "type";
+    public static final String TENANT = "tenant";
+
+    public static final String DEAD_LETTER_REASON = "dead-letter-reason";
+    public static final String DEAD_LETTER_SUBSCRIPTION = "dead-letter-subscription";
+    public static final String DEAD_LETTER_ATTEMPTS = "dead-letter-attempts";
+    public static final String ORIGINAL_MESSAGE_ID = "original-message-id";
+    public static final String ORIGINAL_ORDERING_KEY = "original-ordering-key";
+
+    private MessageAttributes() {
+    }
+}
@@ -1,32 +1,152 @@
 package nl.luminis.articles.pubsub.mapper;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.PubsubMessage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Optional;
 import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.claimcheck.BlobStore;
+import nl.luminis.articles.pubsub.codec.ContentEncoding;
+import nl.luminis.articles.pubsub.codec.PayloadCodec;
+import nl.luminis.articles.pubsub.codec.PayloadCodecRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+@Slf4j
 @Service
 public class PubsubMessageMapper implements Function<Object, PubsubMessage> {
 
-    private final ObjectMapper mapper;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    // Buffers that grew beyond this size for an exceptionally large message are not kept around for the next message.
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
 
-    public PubsubMessageMapper(ObjectMapper mapper) {
-        this.mapper = mapper;
+    private final PayloadCodecRegistry codecRegistry;
+    // Only present when claim checks are enabled, payloads are always sent in the message otherwise.
+    private final BlobStore blobStore;
+    private final AttributeExtractor attributeExtractor;
+    private final ThreadLocal<ReusableByteArrayOutputStream> buffers;
+    private final ThreadLocal<ReusableByteArrayOutputStream> compressionBuffers;
+
+    public PubsubMessageMapper(PayloadCodecRegistry codecRegistry) {
+        this(codecRegistry, Optional.empty());
+    }
+
+    @Autowired
+    public PubsubMessageMapper(PayloadCodecRegistry codecRegistry, Optional<BlobStore> blobStore) {
+        this.codecRegistry = codecRegistry;
+        this.blobStore = blobStore.orElse(null);
+        this.attributeExtractor = new AttributeExtractor();
+        this.buffers = ThreadLocal.withInitial(() -> new ReusableByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+        this.compressionBuffers = ThreadLocal.withInitial(() -> new ReusableByteArrayOutputStream(INITIAL_BUFFER_SIZE));
     }
 
     @Override
     public PubsubMessage apply(Object pojo) {
+        return apply(pojo, PayloadCodecRegistry.DEFAULT_CONTENT_TYPE);
+    }
+
+    public PubsubMessage apply(Object pojo, String contentType) {
+        return apply(pojo, contentType, "");
+    }
+
+    /**
+     * @param orderingKey messages with the same ordering key are delivered in the order in which they were published, if the publisher and
+     *     subscription have message ordering enabled. An empty key means the message is not ordered.
+     */
+    public PubsubMessage apply(Object pojo, String contentType, String orderingKey) {
+        return apply(pojo, contentType, orderingKey, ContentEncoding.NONE, 0);
+    }
+
+    /**
+     * @param minCompressedSize payloads that are encoded into fewer bytes are not compressed. Payloads that do not get smaller by
+     *     compressing them are sent uncompressed as well.
+     */
+    public PubsubMessage apply(Object pojo, String contentType, String orderingKey, ContentEncoding contentEncoding,
+        int minCompressedSize) {
+        return apply(pojo, contentType, orderingKey, contentEncoding, minCompressedSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param claimCheckThreshold payloads that are larger than this, after compression, are written to the blob store, and the message
+     *     only carries a reference to them in the {@value MessageAttributes#CLAIM_CHECK} attribute. Ignored when no blob store is enabled.
+     * @throws UncheckedIOException when the payload could not be written to the blob store
+     */
+    public PubsubMessage apply(Object pojo, String contentType, String orderingKey, ContentEncoding contentEncoding,
+        int minCompressedSize, int claimCheckThreshold) {
+        PayloadCodec codec = codecRegistry.getCodec(contentType);
+        ReusableByteArrayOutputStream buffer = buffers.get();
+        ReusableByteArrayOutputStream compressionBuffer = compressionBuffers.get();
+        buffer.reset();
         try {
-            byte[] message = mapper.writeValueAsBytes(pojo);
+            // The codec writes straight into the reused buffer, which is copied once into the message.
+            codec.encode(pojo, buffer);
 
-            return PubsubMessage
+            PubsubMessage.Builder message = PubsubMessage
                 .newBuilder()
-                .setData(ByteString.copyFrom(message))
-                .build();
-        } catch (JsonProcessingException e) {
+                .putAttributes(MessageAttributes.CONTENT_TYPE, codec.getContentType())
+                .setOrderingKey(orderingKey);
+            attributeExtractor.extract(pojo, message::putAttributes);
+            ReusableByteArrayOutputStream payload = buffer;
+            if (contentEncoding != ContentEncoding.NONE && buffer.size() >= minCompressedSize
+                && compress(buffer, compressionBuffer, contentEncoding)) {
+                payload = compressionBuffer;
+                message.putAttributes(MessageAttributes.CONTENT_ENCODING, contentEncoding.getName());
+            }
+            if (blobStore != null && payload.size() > claimCheckThreshold) {
+                message.putAttributes(MessageAttributes.CLAIM_CHECK, store(payload));
+            } else {
+                message.setData(payload.toByteString());
+            }
+            return message.build();
+        } catch (IOException e) {
             throw new IllegalArgumentException("Could not serialize message", e);
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                buffers.remove();
+            }
+            if (compressionBuffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                compressionBuffers.remove();
+            }
+        }
+    }
+
+    /**
+     * Deletes the payload that was written to the blob store for a message that is not going to be published after all, e.g. because
+     * publishing it failed. Does nothing for messages without a claim check.
+     */
+    public void discard(PubsubMessage message) {
+        String claimCheck = message.getAttributesOrDefault(MessageAttributes.CLAIM_CHECK, null);
+        if (blobStore == null || claimCheck == null) {
+            return;
+        }
+        try {
+            blobStore.delete(claimCheck);
+        } catch (IOException e) {
+            log.warn("Could not delete offloaded payload {} of a message that was not published", claimCheck, e);
+        }
+    }
+
+    /**
+     * @return whether the compressed payload, which is left in the compression buffer, is smaller than the uncompressed one
+     */
+    private boolean compress(ReusableByteArrayOutputStream buffer, ReusableByteArrayOutputStream compressionBuffer,
+        ContentEncoding contentEncoding) throws IOException {
+        compressionBuffer.reset();
+        try (OutputStream output = contentEncoding.compress(compressionBuffer)) {
+            output.write(buffer.getBuffer(), 0, buffer.size());
+        }
+        return compressionBuffer.size() < buffer.size();
+    }
+
+    private String store(ReusableByteArrayOutputStream payload) {
+        try {
+            return blobStore.put(payload.getBuffer(), 0, payload.size());
+        } catch (IOException e) {
+            // Unlike a failure to serialize, this is not caused by the message, so it may well succeed when it is published again.
+            throw new UncheckedIOException(String.format("Could not store payload of %d bytes", payload.size()), e);
         }
     }
 }
@@ -0,0 +1,117 @@
+package nl.luminis.articles.pubsub.mapper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.pubsub.v1.PubsubMessage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import nl.luminis.articles.pubsub.claimcheck.BlobStore;
+import nl.luminis.articles.pubsub.codec.ContentEncoding;
+import nl.luminis.articles.pubsub.codec.PayloadCodec;
+import nl.luminis.articles.pubsub.codec.PayloadCodecRegistry;
+import nl.luminis.articles.pubsub.codec.UnreadablePayloadException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+@Service
+public class PubsubMessageReader {
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    // Pub/Sub messages are at most 10 MB, so this allows for a compression ratio of over 6, while a few malicious bytes that decompress to
+    // gigabytes cannot exhaust the heap.
+    private static final int MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+
+    private final PayloadCodecRegistry codecRegistry;
+    // Only present when claim checks are enabled, messages with a claim check cannot be read otherwise.
+    private final BlobStore blobStore;
+    private final ThreadLocal<ReusableByteArrayOutputStream> buffers;
+
+    public PubsubMessageReader(PayloadCodecRegistry codecRegistry) {
+        this(codecRegistry, Optional.empty());
+    }
+
+    @Autowired
+    public PubsubMessageReader(PayloadCodecRegistry codecRegistry, Optional<BlobStore> blobStore) {
+        this.codecRegistry = codecRegistry;
+        this.blobStore = blobStore.orElse(null);
+        this.buffers = ThreadLocal.withInitial(() -> new ReusableByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+    }
+
+    /**
+     * @throws UnreadablePayloadException when the payload is malformed, written in an unsupported content type or content encoding, or
+     *     refers to a blob that does not exist
+     */
+    public <T> T read(PubsubMessage pubsubMessage, Class<T> type) throws IOException {
+        String contentType = pubsubMessage.getAttributesOrDefault(MessageAttributes.CONTENT_TYPE, null);
+        PayloadCodec codec = codecRegistry
+            .findCodec(contentType)
+            .orElseThrow(() -> new UnreadablePayloadException("Unsupported content type " + contentType));
+
+        String contentEncoding = pubsubMessage.getAttributesOrDefault(MessageAttributes.CONTENT_ENCODING, null);
+        ContentEncoding encoding = contentEncoding == null
+            ? null
+            : ContentEncoding
+                .forName(contentEncoding)
+                .orElseThrow(() -> new UnreadablePayloadException("Unsupported content encoding " + contentEncoding));
+
+        // The input stream reads from the bytes backing the message, or from the mapped blob, so the payload is not copied into an
+        // intermediate array or string.
+        try (InputStream input = openPayload(pubsubMessage)) {
+            return encoding != null ? readCompressed(input, encoding, codec, type) : decode(codec, input, type);
+        }
+    }
+
+    private InputStream openPayload(PubsubMessage pubsubMessage) throws IOException {
+        String claimCheck = pubsubMessage.getAttributesOrDefault(MessageAttributes.CLAIM_CHECK, null);
+        if (claimCheck == null) {
+            return pubsubMessage.getData().newInput();
+        }
+        if (blobStore == null) {
+            throw new UnreadablePayloadException("Payload was offloaded to a blob store, but claim checks are not enabled");
+        }
+        ByteBuffer blob;
+        try {
+            blob = blobStore.get(claimCheck);
+        } catch (IllegalArgumentException e) {
+            throw new UnreadablePayloadException("Invalid claim check " + claimCheck, e);
+        }
+        if (blob == null) {
+            throw new UnreadablePayloadException(String.format("Offloaded payload %s does not exist", claimCheck));
+        }
+        return new ByteBufferBackedInputStream(blob);
+    }
+
+    /**
+     * Decompresses into a buffer that is reused by the next message on this thread, which the codec then reads from.
+     */
+    private <T> T readCompressed(InputStream compressed, ContentEncoding encoding, PayloadCodec codec, Class<T> type) throws IOException {
+        ReusableByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        try {
+            try (InputStream input = encoding.decompress(compressed)) {
+                buffer.readFrom(input, MAX_DECOMPRESSED_SIZE);
+            } catch (IOException e) {
+                // The compressed bytes are in memory, so reading them can only fail when they are corrupt or too large.
+                throw new UnreadablePayloadException(String.format("Invalid %s compressed payload offered", encoding.getName()), e);
+            }
+            return decode(codec, new ByteArrayInputStream(buffer.getBuffer(), 0, buffer.size()), type);
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                buffers.remove();
+            }
+        }
+    }
+
+    private static <T> T decode(PayloadCodec codec, InputStream input, Class<T> type) throws IOException {
+        try {
+            return codec.decode(input, type);
+        } catch (JsonProcessingException | InvalidProtocolBufferException e) {
+            throw new UnreadablePayloadException(String.format("Invalid %s payload offered", codec.getContentType()), e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package nl.luminis.articles.pubsub.mapper;
+
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Unsynchronized alternative to {@link java.io.ByteArrayOutputStream} whose buffer is meant to be reused by a single thread. Unlike
+ * {@link java.io.ByteArrayOutputStream#toByteArray()}, the content can be handed to Protobuf with a single copy.
+ */
+public class ReusableByteArrayOutputStream extends OutputStream {
+
+    private byte[] buffer;
+    private int count;
+
+    public ReusableByteArrayOutputStream(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(count + length);
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the buffer is reused after a reset.
+    }
+
+    /**
+     * Reads the input until its end straight into the buffer.
+     *
+     * @throws IOException when the input holds more than the given number of bytes
+     */
+    public void readFrom(InputStream input, int maxBytes) throws IOException {
+        while (true) {
+            if (count == buffer.length) {
+                ensureCapacity(count + 1);
+            }
+            int read = input.read(buffer, count, buffer.length - count);
+            if (read < 0) {
+                return;
+            }
+            count += read;
+            if (count > maxBytes) {
+                throw new IOException(String.format("Input exceeds %d bytes", maxBytes));
+            }
+        }
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Copies the content into an immutable {@link ByteString}. The buffer itself cannot be wrapped without copying, as it is overwritten by
+     * the next message while the publisher may still be holding on to the previous one.
+     */
+    public ByteString toByteString() {
+        return ByteString.copyFrom(buffer, 0, count);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(minCapacity, buffer.length << 1));
+        }
+    }
+}
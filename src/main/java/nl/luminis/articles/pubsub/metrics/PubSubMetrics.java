@@ -0,0 +1,59 @@
+package nl.luminis.articles.pubsub.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+import org.springframework.stereotype.Service;
+
+/**
+ * Creates the meters of publishers and subscribers, tagged with their topic or subscription. Meters are looked up once, when a publisher or
+ * subscriber is created, so that recording a message does not have to search the registry.
+ */
+@Service
+public class PubSubMetrics {
+
+    static final String TOPIC_TAG = "topic";
+    static final String SUBSCRIPTION_TAG = "subscription";
+
+    private final MeterRegistry meterRegistry;
+    // A gauge is registered once per subscription, so all subscribers of a subscription have to count in the holder it reads.
+    private final ConcurrentMap<String, AtomicInteger> outstandingMessages = new ConcurrentHashMap<>();
+
+    public PubSubMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public PublisherMetrics forTopic(String topic) {
+        return new PublisherMetrics(meterRegistry, topic);
+    }
+
+    /**
+     * Registers a gauge for the number of messages, on all topics, that have not been accepted by Pub/Sub yet. The gauge only holds a weak
+     * reference to the publisher.
+     */
+    public <T> void registerOutstandingPublishes(T publisher, ToDoubleFunction<T> outstandingMessages) {
+        Gauge
+            .builder("pubsub.publisher.outstanding", publisher, outstandingMessages)
+            .description("Messages waiting to be accepted by Pub/Sub")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Registers a gauge for the number of bytes of messages in the publish spool that have not been published again yet.
+     */
+    public <T> void registerSpoolSize(T spool, ToDoubleFunction<T> bytes) {
+        Gauge
+            .builder("pubsub.publisher.spool.size", spool, bytes)
+            .description("Bytes of spooled messages waiting to be published again")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    public SubscriberMetrics forSubscription(String subscription) {
+        return new SubscriberMetrics(meterRegistry, subscription,
+            outstandingMessages.computeIfAbsent(subscription, key -> new AtomicInteger()));
+    }
+}
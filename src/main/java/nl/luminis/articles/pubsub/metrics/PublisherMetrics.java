@@ -0,0 +1,90 @@
+package nl.luminis.articles.pubsub.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class PublisherMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Timer latency;
+    private final Counter failures;
+    private final Counter rejections;
+    private final Counter spooled;
+    private final DistributionSummary messageSize;
+    private final DistributionSummary publishAllSize;
+
+    PublisherMetrics(MeterRegistry meterRegistry, String topic) {
+        this.meterRegistry = meterRegistry;
+        this.latency = Timer
+            .builder("pubsub.publisher.latency")
+            .description("Time between handing a message to the publisher and Pub/Sub accepting it")
+            .tag(PubSubMetrics.TOPIC_TAG, topic)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.failures = Counter
+            .builder("pubsub.publisher.failures")
+            .description("Messages that Pub/Sub did not accept")
+            .tag(PubSubMetrics.TOPIC_TAG, topic)
+            .register(meterRegistry);
+        this.rejections = Counter
+            .builder("pubsub.publisher.rejections")
+            .description("Messages that were refused because too many messages were waiting to be published")
+            .tag(PubSubMetrics.TOPIC_TAG, topic)
+            .register(meterRegistry);
+        this.spooled = Counter
+            .builder("pubsub.publisher.spooled")
+            .description("Messages that were written to the spool because they failed or too many messages were waiting to be published")
+            .tag(PubSubMetrics.TOPIC_TAG, topic)
+            .register(meterRegistry);
+        this.messageSize = DistributionSummary
+            .builder("pubsub.publisher.message.size")
+            .description("Size of the serialized payloads")
+            .baseUnit("bytes")
+            .tag(PubSubMetrics.TOPIC_TAG, topic)
+            .register(meterRegistry);
+        // The client library splits these messages into publish requests on its own, which it does not report.
+        this.publishAllSize = DistributionSummary
+            .builder("pubsub.publisher.publish-all.size")
+            .description("Number of messages handed to the publisher in one publishAll call")
+            .tag(PubSubMetrics.TOPIC_TAG, topic)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Removes the meters of the topic from the registry, after which recording still works but is no longer reported.
+     */
+    public void remove() {
+        for (Meter meter : List.of(latency, failures, rejections, spooled, messageSize, publishAllSize)) {
+            meterRegistry.remove(meter);
+        }
+    }
+
+    public void recordPublished(long startNanos) {
+        latency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFailure() {
+        failures.increment();
+    }
+
+    public void recordRejection() {
+        rejections.increment();
+    }
+
+    public void recordSpooled() {
+        spooled.increment();
+    }
+
+    public void recordMessageSize(int bytes) {
+        messageSize.record(bytes);
+    }
+
+    public void recordPublishAllSize(int messages) {
+        publishAllSize.record(messages);
+    }
+}
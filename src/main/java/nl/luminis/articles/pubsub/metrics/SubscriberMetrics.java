@@ -0,0 +1,162 @@
+package nl.luminis.articles.pubsub.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+import nl.luminis.articles.pubsub.subscriber.routing.RoutingAction;
+
+public class SubscriberMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final String subscription;
+    private final Timer processing;
+    private final Counter acks;
+    private final Counter nacks;
+    private final Counter unreadable;
+    private final Counter duplicates;
+    private final Counter uniques;
+    private final Counter retries;
+    private final Counter deadLetters;
+    private final Map<RoutingAction, Counter> routed = new EnumMap<>(RoutingAction.class);
+    private final DistributionSummary messageSize;
+    private final AtomicInteger outstanding;
+
+    SubscriberMetrics(MeterRegistry meterRegistry, String subscription, AtomicInteger outstanding) {
+        this.meterRegistry = meterRegistry;
+        this.subscription = subscription;
+        this.processing = Timer
+            .builder("pubsub.subscriber.processing")
+            .description("Time between receiving a message and acking or nacking it")
+            .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.acks = createReplyCounter("ack");
+        this.nacks = createReplyCounter("nack");
+        this.unreadable = Counter
+            .builder("pubsub.subscriber.unreadable")
+            .description("Messages with a payload that could not be deserialized")
+            .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+            .register(meterRegistry);
+        this.duplicates = createDeduplicationCounter("hit");
+        this.uniques = createDeduplicationCounter("miss");
+        this.retries = Counter
+            .builder("pubsub.subscriber.retries")
+            .description("Failed messages that were nacked after a delay, to be redelivered")
+            .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+            .register(meterRegistry);
+        this.deadLetters = Counter
+            .builder("pubsub.subscriber.deadletters")
+            .description("Messages that were published to the dead-letter topic")
+            .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+            .register(meterRegistry);
+        for (RoutingAction action : RoutingAction.values()) {
+            routed.put(action, Counter
+                .builder("pubsub.subscriber.routed")
+                .description("Messages that matched a routing rule, by the action of the rule")
+                .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+                .tag("action", action.name().toLowerCase())
+                .register(meterRegistry));
+        }
+        this.messageSize = DistributionSummary
+            .builder("pubsub.subscriber.message.size")
+            .description("Size of the received payloads")
+            .baseUnit("bytes")
+            .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+            .register(meterRegistry);
+        this.outstanding = outstanding;
+        Gauge
+            .builder("pubsub.subscriber.outstanding", outstanding, AtomicInteger::get)
+            .description("Messages received but not acked or nacked yet")
+            .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Registers a gauge for the number of messages that were received but not consumed yet, e.g. the size of the sink they are handed to.
+     */
+    public <T> void registerBacklog(T backlog, ToDoubleFunction<T> size) {
+        Gauge
+            .builder("pubsub.subscriber.backlog", backlog, size)
+            .description("Messages received and acked, but not consumed yet")
+            .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+            .register(meterRegistry);
+    }
+
+    public <T> void registerDeduplicationEvictions(T deduplicator, ToDoubleFunction<T> evictions) {
+        FunctionCounter
+            .builder("pubsub.subscriber.deduplication.evictions", deduplicator, evictions)
+            .description("Keys of processed messages that were forgotten before they expired, to make room for other keys")
+            .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+            .register(meterRegistry);
+    }
+
+    /**
+     * @return the start time to pass to {@link #recordAck(long)} or {@link #recordNack(long)}
+     */
+    public long recordReceived(int bytes) {
+        outstanding.incrementAndGet();
+        messageSize.record(bytes);
+        return System.nanoTime();
+    }
+
+    public void recordAck(long startNanos) {
+        acks.increment();
+        recordReplied(startNanos);
+    }
+
+    public void recordNack(long startNanos) {
+        nacks.increment();
+        recordReplied(startNanos);
+    }
+
+    public void recordUnreadable() {
+        unreadable.increment();
+    }
+
+    public void recordDeduplication(boolean duplicate) {
+        (duplicate ? duplicates : uniques).increment();
+    }
+
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    public void recordDeadLetter() {
+        deadLetters.increment();
+    }
+
+    public void recordRouted(RoutingAction action) {
+        routed.get(action).increment();
+    }
+
+    private void recordReplied(long startNanos) {
+        outstanding.decrementAndGet();
+        processing.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Counter createDeduplicationCounter(String result) {
+        return Counter
+            .builder("pubsub.subscriber.deduplication")
+            .description("Messages that were skipped because they were processed before (hit) or not (miss)")
+            .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private Counter createReplyCounter(String reply) {
+        return Counter
+            .builder("pubsub.subscriber.replies")
+            .description("Messages acked or nacked")
+            .tag(PubSubMetrics.SUBSCRIPTION_TAG, subscription)
+            .tag("reply", reply)
+            .register(meterRegistry);
+    }
+}
@@ -1,28 +1,293 @@
 package nl.luminis.articles.pubsub.publisher;
 
-import com.google.cloud.pubsub.v1.Publisher;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.pubsub.v1.ProjectTopicName;
 import com.google.pubsub.v1.PubsubMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import nl.luminis.articles.pubsub.PubSubConfig;
 import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.dto.PublishResult;
 import nl.luminis.articles.pubsub.mapper.PubsubMessageMapper;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.metrics.PublisherMetrics;
+import nl.luminis.articles.pubsub.publisher.spool.PublishSpool;
 import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
 public class DummyMessagePublisher {
 
-    private final Publisher publisher;
+    public static final String NO_ORDERING_KEY = "";
+    // Completes the future of a message that was spooled instead of published, as it has no message ID yet. Pub/Sub assigns numeric
+    // message IDs, so it is never mistaken for one.
+    public static final String SPOOLED = "spooled";
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10L;
+
+    private final PubSubConfig pubSubConfig;
+    private final PublisherRegistry publisherRegistry;
     private final PubsubMessageMapper pubsubMessageMapper;
+    private final int maxOutstandingMessages;
+    // The outstanding message limit is shared by all topics, as it protects the heap rather than a single publisher.
+    private final Semaphore outstandingMessages;
+    // Null when spooling is not enabled.
+    private final PublishSpool spool;
+    // Messages that would be spooled when they fail, until they were accepted or failed. Those that are still outstanding at shutdown are
+    // spooled then, as the client library keeps retrying them for longer than shutting down may take.
+    private final Set<OutstandingPublish> spoolablePublishes = ConcurrentHashMap.newKeySet();
 
-    public DummyMessagePublisher(PubSubConfig pubSubConfig, PublisherFactory publisherFactory, PubsubMessageMapper pubsubMessageMapper) {
-        this.publisher = publisherFactory.build(pubSubConfig.getProjectTopicName());
+    public DummyMessagePublisher(PubSubConfig pubSubConfig, PublisherRegistry publisherRegistry, PubsubMessageMapper pubsubMessageMapper,
+        PubSubMetrics pubSubMetrics, Optional<PublishSpool> spool) {
+        this.pubSubConfig = pubSubConfig;
+        this.publisherRegistry = publisherRegistry;
         this.pubsubMessageMapper = pubsubMessageMapper;
+        this.maxOutstandingMessages = pubSubConfig.getMaxOutstandingPublishes();
+        this.outstandingMessages = new Semaphore(maxOutstandingMessages);
+        this.spool = spool.orElse(null);
+        pubSubMetrics.registerOutstandingPublishes(this, DummyMessagePublisher::getOutstandingMessages);
     }
 
     public void publish(DummyMessage message) {
-        PubsubMessage pubsubMessage = pubsubMessageMapper.apply(message);
-        publisher.publish(pubsubMessage);
-        log.debug("Published message with ID {}", message.getId());
+        publishAsync(message);
+    }
+
+    /**
+     * Publishes the message without waiting for Pub/Sub to accept it, unless it has an ordering key. A failed message with an ordering key
+     * would be followed by the next message with that key without anyone noticing the gap, so then this waits for the message to be
+     * accepted and throws when it failed.
+     *
+     * @throws ApiException when a message with an ordering key was not accepted by Pub/Sub
+     */
+    public void publish(String topic, String orderingKey, DummyMessage message) {
+        CompletableFuture<String> result = publishAsync(topic, orderingKey, message);
+        if (orderingKey.isEmpty()) {
+            return;
+        }
+        try {
+            result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the message to be published", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not publish message with ID " + message.getId(), e.getCause());
+        }
+    }
+
+    public CompletableFuture<String> publishAsync(DummyMessage message) {
+        return publishAsync(pubSubConfig.getTopicName(), NO_ORDERING_KEY, message);
+    }
+
+    /**
+     * Publishes the message without waiting for Pub/Sub to accept it. The returned future completes with the server-assigned message ID.
+     * Messages with the same non-empty ordering key are delivered in order, when message ordering is enabled for the topic.
+     *
+     * <p>When the publish spool is enabled, messages without an ordering key that fail, or that exceed the maximum number of outstanding
+     * messages, are written to the spool to be published later. Their future completes with {@link #SPOOLED}, as they have no message ID
+     * yet.
+     *
+     * @throws PublishRejectedException when the maximum number of outstanding messages has been reached
+     * @throws MessageOrderingDisabledException when an ordering key is given, but message ordering is not enabled for the topic
+     */
+    public CompletableFuture<String> publishAsync(String topic, String orderingKey, DummyMessage message) {
+        ProjectTopicName projectTopicName = pubSubConfig.getProjectTopicName(topic);
+        TopicPublisher topicPublisher = publisherRegistry.get(projectTopicName);
+        PublisherProperties properties = topicPublisher.getProperties();
+        PublisherMetrics metrics = topicPublisher.getMetrics();
+        if (!orderingKey.isEmpty() && !properties.isEnableMessageOrdering()) {
+            throw new MessageOrderingDisabledException(String.format("Message ordering is not enabled for topic %s", topic));
+        }
+        if (!outstandingMessages.tryAcquire()) {
+            if (spool != null && orderingKey.isEmpty()) {
+                PubsubMessage pubsubMessage = toPubsubMessage(properties, NO_ORDERING_KEY, message);
+                if (spool.offer(projectTopicName, pubsubMessage)) {
+                    metrics.recordSpooled();
+                    return CompletableFuture.completedFuture(SPOOLED);
+                }
+                pubsubMessageMapper.discard(pubsubMessage);
+            }
+            metrics.recordRejection();
+            throw new PublishRejectedException(
+                String.format("Rejected message with ID %d, %d messages are already waiting to be published", message.getId(), maxOutstandingMessages));
+        }
+
+        long startNanos = System.nanoTime();
+        PubsubMessage pubsubMessage = null;
+        ApiFuture<String> future;
+        try {
+            pubsubMessage = toPubsubMessage(properties, orderingKey, message);
+            metrics.recordMessageSize(pubsubMessage.getData().size());
+            future = publisherRegistry.publish(projectTopicName, pubsubMessage);
+        } catch (RuntimeException e) {
+            outstandingMessages.release();
+            if (pubsubMessage != null) {
+                pubsubMessageMapper.discard(pubsubMessage);
+            }
+            throw e;
+        }
+        PubsubMessage published = pubsubMessage;
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        OutstandingPublish spoolable = null;
+        if (spool != null && orderingKey.isEmpty()) {
+            spoolable = new OutstandingPublish(projectTopicName, published, metrics, result);
+            spoolablePublishes.add(spoolable);
+        }
+        OutstandingPublish outstanding = spoolable;
+        ApiFutures.addCallback(future, new ApiFutureCallback<String>() {
+            @Override
+            public void onFailure(Throwable t) {
+                if (outstanding != null && !spoolablePublishes.remove(outstanding)) {
+                    // Already spooled while shutting down.
+                    return;
+                }
+                outstandingMessages.release();
+                metrics.recordFailure();
+                if (spool != null && orderingKey.isEmpty() && spool.offer(projectTopicName, published)) {
+                    metrics.recordSpooled();
+                    log.info("Could not publish message with ID {} on topic {}, spooled it: {}", message.getId(), topic, t.toString());
+                    result.complete(SPOOLED);
+                    return;
+                }
+                log.warn("Could not publish message with ID {} on topic {}", message.getId(), topic, t);
+                // Nobody will ever receive the reference to its offloaded payload.
+                pubsubMessageMapper.discard(published);
+                if (!orderingKey.isEmpty()) {
+                    // The caller is told about the failure, through the returned future or by publish waiting for it, so it can decide
+                    // to publish the message again; later messages with this key should not all fail because of it.
+                    publisherRegistry.resumePublish(projectTopicName, orderingKey);
+                }
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onSuccess(String messageId) {
+                if (outstanding != null && !spoolablePublishes.remove(outstanding)) {
+                    log.debug("Message with ID {} was published as {} after it was spooled", message.getId(), messageId);
+                    return;
+                }
+                outstandingMessages.release();
+                metrics.recordPublished(startNanos);
+                log.debug("Published message with ID {} as {}", message.getId(), messageId);
+                result.complete(messageId);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    public List<PublishResult> publishAll(List<DummyMessage> messages) {
+        publisherRegistry.get(pubSubConfig.getProjectTopicName()).getMetrics().recordPublishAllSize(messages.size());
+        // Hand all messages to the publisher before waiting on any of them, so that they can be sent in as few batches as possible.
+        List<CompletableFuture<String>> futures = new ArrayList<>(messages.size());
+        for (DummyMessage message : messages) {
+            futures.add(publishQuietly(message));
+        }
+
+        List<PublishResult> results = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            results.add(await(messages.get(i), futures.get(i)));
+        }
+        log.debug("Published batch of {} messages", messages.size());
+        return results;
+    }
+
+    public int getOutstandingMessages() {
+        return maxOutstandingMessages - outstandingMessages.availablePermits();
+    }
+
+    /**
+     * Waits for outstanding messages to be accepted or to fail, so that failed ones can still be spooled before the spool closes. Messages
+     * that are still outstanding after that are spooled right away. The publisher may still manage to publish them while it shuts down,
+     * in which case they are published twice.
+     */
+    @PreDestroy
+    public void preDestroy() throws InterruptedException {
+        if (outstandingMessages.tryAcquire(maxOutstandingMessages, SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            outstandingMessages.release(maxOutstandingMessages);
+            return;
+        }
+        int outstanding = getOutstandingMessages();
+        int spooled = spoolOutstandingPublishes();
+        log.warn("{} messages were still waiting to be published after {} seconds, spooled {} of them", outstanding, SHUTDOWN_TIMEOUT_SECONDS,
+            spooled);
+    }
+
+    private int spoolOutstandingPublishes() {
+        int spooled = 0;
+        for (OutstandingPublish outstanding : spoolablePublishes) {
+            if (!spoolablePublishes.remove(outstanding)) {
+                // Completed in the meantime.
+                continue;
+            }
+            outstandingMessages.release();
+            if (spool.offer(outstanding.topic, outstanding.message)) {
+                outstanding.metrics.recordSpooled();
+                outstanding.result.complete(SPOOLED);
+                spooled++;
+            } else {
+                outstanding.result.completeExceptionally(new IllegalStateException("Could not spool the message while shutting down"));
+            }
+        }
+        return spooled;
+    }
+
+    private PubsubMessage toPubsubMessage(PublisherProperties properties, String orderingKey, DummyMessage message) {
+        return pubsubMessageMapper.apply(message, properties.getContentType(), orderingKey, properties.getCompressionEncoding(),
+            properties.getCompressionMinSizeBytes(), properties.getClaimCheckThresholdBytes());
+    }
+
+    private CompletableFuture<String> publishQuietly(DummyMessage message) {
+        try {
+            return publishAsync(message);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private PublishResult await(DummyMessage message, CompletableFuture<String> future) {
+        PublishResult.PublishResultBuilder result = PublishResult.builder().id(message.getId());
+        try {
+            String messageId = future.get();
+            if (SPOOLED.equals(messageId)) {
+                return result.spooled(true).build();
+            }
+            return result.messageId(messageId).build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return result.error("Interrupted while waiting for the message to be published").build();
+        } catch (ExecutionException e) {
+            return result.error(e.getCause().getMessage()).build();
+        }
+    }
+
+    private static class OutstandingPublish {
+
+        private final ProjectTopicName topic;
+        private final PubsubMessage message;
+        private final PublisherMetrics metrics;
+        private final CompletableFuture<String> result;
+
+        OutstandingPublish(ProjectTopicName topic, PubsubMessage message, PublisherMetrics metrics, CompletableFuture<String> result) {
+            this.topic = topic;
+            this.message = message;
+            this.metrics = metrics;
+            this.result = result;
+        }
     }
 }
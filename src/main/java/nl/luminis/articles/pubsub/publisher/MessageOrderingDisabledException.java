@@ -0,0 +1,8 @@
+package nl.luminis.articles.pubsub.publisher;
+
+public class MessageOrderingDisabledException extends IllegalArgumentException {
+
+    public MessageOrderingDisabledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package nl.luminis.articles.pubsub.publisher;
+
+public class PublishRejectedException extends RuntimeException {
+
+    public PublishRejectedException(String message) {
+        super(message);
+    }
+}
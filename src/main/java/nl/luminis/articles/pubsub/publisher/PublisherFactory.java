@@ -5,30 +5,41 @@ import com.google.pubsub.v1.ProjectTopicName;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.PubSubConfig;
 import nl.luminis.articles.pubsub.auth.CredentialsProviderFactory;
 import nl.luminis.articles.pubsub.auth.TransportChannelProviderFactory;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
 import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
 public class PublisherFactory {
 
+    private final PubSubConfig pubSubConfig;
     private final CredentialsProviderFactory credentialsProviderFactory;
     private final TransportChannelProviderFactory channelProviderFactory;
+    private final PubSubMetrics pubSubMetrics;
 
-    public PublisherFactory(CredentialsProviderFactory credentialsProviderFactory, TransportChannelProviderFactory channelProviderFactory) {
+    public PublisherFactory(PubSubConfig pubSubConfig, CredentialsProviderFactory credentialsProviderFactory,
+        TransportChannelProviderFactory channelProviderFactory, PubSubMetrics pubSubMetrics) {
+        this.pubSubConfig = pubSubConfig;
         this.credentialsProviderFactory = credentialsProviderFactory;
         this.channelProviderFactory = channelProviderFactory;
+        this.pubSubMetrics = pubSubMetrics;
     }
 
-    public Publisher build(ProjectTopicName projectTopicName) {
-        log.info("Creating new publisher for topic {}", projectTopicName.toString());
+    public TopicPublisher build(ProjectTopicName projectTopicName) {
+        PublisherProperties properties = pubSubConfig.getPublisherProperties(projectTopicName.getTopic());
+        log.info("Creating new publisher for topic {} with {}", projectTopicName.toString(), properties);
         try {
-            return Publisher
+            Publisher publisher = Publisher
                 .newBuilder(projectTopicName)
                 .setCredentialsProvider(credentialsProviderFactory.create())
                 .setChannelProvider(channelProviderFactory.create())
+                .setBatchingSettings(properties.toBatchingSettings())
+                .setEnableMessageOrdering(properties.isEnableMessageOrdering())
                 .build();
+            return new TopicPublisher(projectTopicName, publisher, properties, pubSubMetrics.forTopic(projectTopicName.getTopic()));
         } catch (IOException e) {
             throw new UncheckedIOException(String.format("Failed to build publisher for topic %s", projectTopicName.toString()), e);
         }
@@ -0,0 +1,43 @@
+package nl.luminis.articles.pubsub.publisher;
+
+import com.google.api.gax.batching.BatchingSettings;
+import lombok.Builder;
+import lombok.Value;
+import nl.luminis.articles.pubsub.codec.ContentEncoding;
+import nl.luminis.articles.pubsub.codec.PayloadCodecRegistry;
+import org.threeten.bp.Duration;
+
+@Value
+@Builder
+public class PublisherProperties {
+
+    // Defaults are equal to the ones the Pub/Sub client library uses when no batching settings are provided.
+    public static final long DEFAULT_ELEMENT_COUNT_THRESHOLD = 100L;
+    public static final long DEFAULT_REQUEST_BYTE_THRESHOLD = 1000L;
+    public static final long DEFAULT_DELAY_THRESHOLD_MILLIS = 1L;
+    public static final String DEFAULT_CONTENT_TYPE = PayloadCodecRegistry.DEFAULT_CONTENT_TYPE;
+    public static final boolean DEFAULT_ENABLE_MESSAGE_ORDERING = false;
+    public static final ContentEncoding DEFAULT_COMPRESSION_ENCODING = ContentEncoding.NONE;
+    public static final int DEFAULT_COMPRESSION_MIN_SIZE_BYTES = 1024;
+    public static final int DEFAULT_CLAIM_CHECK_THRESHOLD_BYTES = 1024 * 1024;
+
+    private long elementCountThreshold;
+    private long requestByteThreshold;
+    private long delayThresholdMillis;
+    private String contentType;
+    private boolean enableMessageOrdering;
+    private ContentEncoding compressionEncoding;
+    // Compressing small payloads costs more CPU time than the few bytes it saves are worth.
+    private int compressionMinSizeBytes;
+    // Payloads that are larger, after compression, are stored in the blob store when one is enabled.
+    private int claimCheckThresholdBytes;
+
+    public BatchingSettings toBatchingSettings() {
+        return BatchingSettings
+            .newBuilder()
+            .setElementCountThreshold(elementCountThreshold)
+            .setRequestByteThreshold(requestByteThreshold)
+            .setDelayThreshold(Duration.ofMillis(delayThresholdMillis))
+            .build();
+    }
+}
@@ -0,0 +1,137 @@
+package nl.luminis.articles.pubsub.publisher;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import org.springframework.stereotype.Service;
+
+/**
+ * Creates a {@link Publisher} the first time a topic is published on and keeps it for later messages. Publishers that have not been used
+ * for a while, or the least recently used ones when there are too many, are removed. A removed publisher sends the messages it still holds
+ * before it shuts down, and the meters of its topic are removed, so that publishing on many different topics does not grow the heap.
+ */
+@Slf4j
+@Service
+public class PublisherRegistry {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10L;
+    // Expired publishers are otherwise only removed when another publisher is looked up.
+    private static final long CLEAN_UP_INTERVAL_SECONDS = 60L;
+
+    private final ScheduledExecutorService executor;
+    private final LoadingCache<ProjectTopicName, TopicPublisher> publishers;
+
+    public PublisherRegistry(PubSubConfig pubSubConfig, PublisherFactory publisherFactory) {
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("publisher-registry-%d")
+            .setDaemon(true)
+            .build());
+        this.publishers = CacheBuilder
+            .newBuilder()
+            .maximumSize(pubSubConfig.getPublisherRegistryMaximumSize())
+            .expireAfterAccess(pubSubConfig.getPublisherRegistryIdleTimeoutSeconds(), TimeUnit.SECONDS)
+            .removalListener(this::remove)
+            .build(CacheLoader.from(publisherFactory::build));
+
+        long cleanUpInterval = Math.min(CLEAN_UP_INTERVAL_SECONDS, pubSubConfig.getPublisherRegistryIdleTimeoutSeconds());
+        executor.scheduleWithFixedDelay(publishers::cleanUp, cleanUpInterval, cleanUpInterval, TimeUnit.SECONDS);
+    }
+
+    public TopicPublisher get(ProjectTopicName topic) {
+        try {
+            return publishers.getUnchecked(topic);
+        } catch (UncheckedExecutionException e) {
+            // Rethrow the exception of PublisherFactory, e.g. an UncheckedIOException.
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    public ApiFuture<String> publish(ProjectTopicName topic, PubsubMessage message) {
+        Publisher publisher = get(topic).getPublisher();
+        try {
+            return publisher.publish(message);
+        } catch (IllegalStateException e) {
+            // The publisher was removed and shut down between looking it up and publishing on it, the next lookup creates a new one.
+            Publisher current = get(topic).getPublisher();
+            if (current == publisher) {
+                throw e;
+            }
+            return current.publish(message);
+        }
+    }
+
+    /**
+     * After a message with an ordering key failed to publish, later messages with that key are rejected to preserve their order. This
+     * accepts messages with the key again.
+     */
+    public void resumePublish(ProjectTopicName topic, String orderingKey) {
+        TopicPublisher publisher = publishers.getIfPresent(topic);
+        if (publisher != null) {
+            publisher.getPublisher().resumePublish(orderingKey);
+        }
+    }
+
+    public long size() {
+        return publishers.size();
+    }
+
+    /**
+     * @return the properties of the current publishers by topic
+     */
+    public Map<String, PublisherProperties> getEffectiveProperties() {
+        Map<String, PublisherProperties> properties = new LinkedHashMap<>();
+        publishers.asMap().forEach((topic, publisher) -> properties.put(topic.toString(), publisher.getProperties()));
+        return properties;
+    }
+
+    @PreDestroy
+    public void preDestroy() throws InterruptedException {
+        publishers.invalidateAll();
+        publishers.cleanUp();
+        executor.shutdown();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("Not all publishers were shut down within {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+        }
+    }
+
+    private void remove(RemovalNotification<ProjectTopicName, TopicPublisher> notification) {
+        // The meters are removed right away, rather than after shutting down, so that a new publisher for the same topic registers fresh
+        // ones instead of getting the meters that are about to be removed.
+        notification.getValue().getMetrics().remove();
+        try {
+            // Shutting down waits for outstanding messages, which should not hold up the thread that looks up a publisher.
+            executor.execute(() -> shutdown(notification));
+        } catch (RejectedExecutionException e) {
+            shutdown(notification);
+        }
+    }
+
+    private void shutdown(RemovalNotification<ProjectTopicName, TopicPublisher> notification) {
+        log.info("Shutting down publisher for topic {} ({})", notification.getKey(), notification.getCause());
+        Publisher publisher = notification.getValue().getPublisher();
+        try {
+            publisher.shutdown();
+            publisher.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Could not shut down publisher for topic {}", notification.getKey(), e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package nl.luminis.articles.pubsub.publisher;
+
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import org.reactivestreams.Publisher;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive Streams API on top of {@link DummyMessagePublisher}. Nothing is published until the returned {@link Mono} or {@link Flux} is
+ * subscribed to.
+ */
+@Service
+public class ReactiveDummyMessagePublisher {
+
+    private final DummyMessagePublisher publisher;
+    private final String defaultTopic;
+    private final int maxInFlight;
+
+    public ReactiveDummyMessagePublisher(PubSubConfig pubSubConfig, DummyMessagePublisher publisher) {
+        this.publisher = publisher;
+        this.defaultTopic = pubSubConfig.getTopicName();
+        this.maxInFlight = pubSubConfig.getMaxInFlightReactivePublishes();
+    }
+
+    /**
+     * @return the server-assigned message ID, or {@link DummyMessagePublisher#SPOOLED} when the message was spooled to be published later
+     */
+    public Mono<String> publish(DummyMessage message) {
+        return publish(defaultTopic, message);
+    }
+
+    public Mono<String> publish(String topic, DummyMessage message) {
+        return Mono.defer(() -> Mono.fromFuture(publisher.publishAsync(topic, DummyMessagePublisher.NO_ORDERING_KEY, message)));
+    }
+
+    /**
+     * Publishes every message that the given publisher emits, with at most gcloud.pubsub.publisher.reactive.max-in-flight messages waiting
+     * to be accepted by Pub/Sub at a time. Messages are only requested from upstream as earlier ones are accepted.
+     *
+     * @return the server-assigned message IDs, in the order of the messages, with {@link DummyMessagePublisher#SPOOLED} for the messages that
+     *     were spooled to be published later
+     */
+    public Flux<String> publishAll(Publisher<DummyMessage> messages) {
+        return publishAll(defaultTopic, messages);
+    }
+
+    public Flux<String> publishAll(String topic, Publisher<DummyMessage> messages) {
+        return Flux.from(messages).flatMapSequential(message -> publish(topic, message), maxInFlight);
+    }
+}
@@ -0,0 +1,71 @@
+package nl.luminis.articles.pubsub.publisher;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.dto.StreamPublishResult;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publishes newline-delimited JSON messages while they are being read, so that the input never has to fit in memory. Every message is
+ * handed to {@link DummyMessagePublisher} as soon as it is parsed. Reading pauses while gcloud.pubsub.publisher.stream.max-in-flight
+ * messages of the same input are waiting to be accepted by Pub/Sub, which slows down the client instead of buffering its messages.
+ */
+@Slf4j
+@Service
+public class StreamPublisher {
+
+    private final DummyMessagePublisher publisher;
+    private final ObjectReader reader;
+    private final int maxInFlight;
+
+    public StreamPublisher(PubSubConfig pubSubConfig, DummyMessagePublisher publisher, ObjectMapper objectMapper) {
+        this.publisher = publisher;
+        this.reader = objectMapper.readerFor(DummyMessage.class);
+        this.maxInFlight = pubSubConfig.getMaxInFlightStreamPublishes();
+    }
+
+    /**
+     * Blocks until every message in the input was accepted or failed, or the input turned out to be malformed.
+     */
+    public StreamPublishResult publish(InputStream input) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        LongAdder accepted = new LongAdder();
+        LongAdder failed = new LongAdder();
+        String error = null;
+
+        try (MappingIterator<DummyMessage> messages = reader.readValues(input)) {
+            while (messages.hasNextValue()) {
+                DummyMessage message = messages.nextValue();
+                inFlight.acquire();
+                try {
+                    publisher.publishAsync(message).whenComplete((messageId, t) -> {
+                        // Counted before releasing the permit, as acquiring all permits is what waits for the last count.
+                        (t == null ? accepted : failed).increment();
+                        inFlight.release();
+                    });
+                } catch (RuntimeException e) {
+                    // Rejected, e.g. because other requests are publishing too many messages at the same time.
+                    failed.increment();
+                    inFlight.release();
+                    log.debug("Could not publish message with ID {}: {}", message.getId(), e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            error = e.getMessage();
+            log.info("Stopped reading malformed message stream: {}", error);
+        } finally {
+            // Wait for the messages that were handed to the publisher, also when reading failed halfway.
+            inFlight.acquire(maxInFlight);
+        }
+
+        return StreamPublishResult.builder().accepted(accepted.sum()).failed(failed.sum()).error(error).build();
+    }
+}
@@ -0,0 +1,19 @@
+package nl.luminis.articles.pubsub.publisher;
+
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.pubsub.v1.ProjectTopicName;
+import lombok.Value;
+import nl.luminis.articles.pubsub.metrics.PublisherMetrics;
+
+/**
+ * The publisher of a single topic, together with the properties it was built with and its meters. The {@link PublisherRegistry} keeps
+ * them as one entry, so that nothing is left behind for a topic once its publisher is removed.
+ */
+@Value
+public class TopicPublisher {
+
+    private ProjectTopicName projectTopicName;
+    private Publisher publisher;
+    private PublisherProperties properties;
+    private PublisherMetrics metrics;
+}
@@ -0,0 +1,177 @@
+package nl.luminis.articles.pubsub.publisher.spool;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.CodedOutputStream;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PubsubMessage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps messages that could not be published, because Pub/Sub failed or too many messages were outstanding, in a {@link SegmentLog} on
+ * local disk. A background thread publishes them again in the order in which they were spooled. A batch is only removed from the spool once
+ * all of its messages were accepted; when one of them fails, the whole batch is tried again later, so messages can be published twice.
+ *
+ * <p>Messages that can never be published, because their topic does not exist, Pub/Sub refuses them or their record cannot be read, are
+ * logged and dropped, so that they do not keep the messages behind them from being replayed.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "gcloud.pubsub.publisher.spool.enabled", havingValue = "true")
+public class PublishSpool {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10L;
+    // Failures that trying again will not resolve.
+    private static final Set<StatusCode.Code> PERMANENT_FAILURES = Set.of(StatusCode.Code.NOT_FOUND, StatusCode.Code.INVALID_ARGUMENT,
+        StatusCode.Code.PERMISSION_DENIED, StatusCode.Code.FAILED_PRECONDITION);
+
+    private final PublisherRegistry publisherRegistry;
+    private final SegmentLog segmentLog;
+    private final int replayBatchSize;
+    private final long replayTimeoutSeconds;
+    private final ScheduledExecutorService executor;
+
+    public PublishSpool(PubSubConfig pubSubConfig, PublisherRegistry publisherRegistry, PubSubMetrics pubSubMetrics) throws IOException {
+        this.publisherRegistry = publisherRegistry;
+        this.segmentLog = new SegmentLog(Paths.get(pubSubConfig.getSpoolDirectory()), pubSubConfig.getSpoolSegmentSizeBytes(),
+            pubSubConfig.getSpoolMaxSegments());
+        this.replayBatchSize = pubSubConfig.getSpoolReplayBatchSize();
+        this.replayTimeoutSeconds = pubSubConfig.getSpoolReplayTimeoutSeconds();
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("publish-spool-%d")
+            .setDaemon(true)
+            .build());
+
+        long interval = pubSubConfig.getSpoolReplayIntervalMillis();
+        executor.scheduleWithFixedDelay(this::replay, interval, interval, TimeUnit.MILLISECONDS);
+        pubSubMetrics.registerSpoolSize(segmentLog, SegmentLog::getSize);
+        if (!segmentLog.isEmpty()) {
+            log.info("Spool in {} holds {} bytes of messages from an earlier run", pubSubConfig.getSpoolDirectory(), segmentLog.getSize());
+        }
+    }
+
+    /**
+     * @return false when the spool is full or closed, in which case the message was not stored
+     */
+    public boolean offer(ProjectTopicName topic, PubsubMessage message) {
+        try {
+            return segmentLog.append(toRecord(topic, message));
+        } catch (IOException | IllegalStateException e) {
+            log.warn("Could not spool message for topic {}", topic, e);
+            return false;
+        }
+    }
+
+    public boolean isEmpty() {
+        return segmentLog.isEmpty();
+    }
+
+    /**
+     * Publishes batches of spooled messages until the spool is empty or a batch fails.
+     */
+    void replay() {
+        try {
+            List<byte[]> records = segmentLog.peek(replayBatchSize);
+            while (!records.isEmpty()) {
+                List<ApiFuture<String>> futures = new ArrayList<>(records.size());
+                List<ProjectTopicName> topics = new ArrayList<>(records.size());
+                for (byte[] record : records) {
+                    ProjectTopicName topic;
+                    PubsubMessage message;
+                    try {
+                        ByteBuffer buffer = ByteBuffer.wrap(record);
+                        topic = readTopic(buffer);
+                        message = PubsubMessage.parseFrom(buffer);
+                    } catch (IOException | RuntimeException e) {
+                        log.error("Dropping spooled record of {} bytes that cannot be read", record.length, e);
+                        continue;
+                    }
+                    futures.add(publisherRegistry.publish(topic, message));
+                    topics.add(topic);
+                }
+                awaitPublished(futures, topics);
+                segmentLog.acknowledge();
+                log.debug("Replayed {} spooled messages", records.size());
+                records = segmentLog.peek(replayBatchSize);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.info("Could not replay spooled messages yet, trying again later: {}", e.toString());
+        } catch (IOException | RuntimeException e) {
+            // Catch everything, as an exception would cancel the scheduled replays.
+            log.error("Could not replay spooled messages", e);
+        }
+    }
+
+    /**
+     * Waits until every message was accepted, or failed in a way that trying again will not resolve.
+     *
+     * @throws ExecutionException when a message failed, but may be accepted when it is tried again
+     */
+    private void awaitPublished(List<ApiFuture<String>> futures, List<ProjectTopicName> topics)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(replayTimeoutSeconds);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                if (!isPermanentFailure(e.getCause())) {
+                    throw e;
+                }
+                log.error("Dropping spooled message for topic {}, it can never be published: {}", topics.get(i), e.getCause().toString());
+            }
+        }
+    }
+
+    private static boolean isPermanentFailure(Throwable failure) {
+        return failure instanceof ApiException && PERMANENT_FAILURES.contains(((ApiException) failure).getStatusCode().getCode());
+    }
+
+    @PreDestroy
+    public void preDestroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("Spooled messages were still being replayed after {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+            executor.shutdownNow();
+        }
+        segmentLog.close();
+    }
+
+    private static byte[] toRecord(ProjectTopicName topic, PubsubMessage message) throws IOException {
+        byte[] topicBytes = topic.toString().getBytes(StandardCharsets.UTF_8);
+        int offset = Integer.BYTES + topicBytes.length;
+        byte[] record = new byte[offset + message.getSerializedSize()];
+        ByteBuffer.wrap(record).putInt(topicBytes.length).put(topicBytes);
+        CodedOutputStream output = CodedOutputStream.newInstance(record, offset, record.length - offset);
+        message.writeTo(output);
+        output.checkNoSpaceLeft();
+        return record;
+    }
+
+    private static ProjectTopicName readTopic(ByteBuffer buffer) {
+        byte[] topicBytes = new byte[buffer.getInt()];
+        buffer.get(topicBytes);
+        return ProjectTopicName.parse(new String(topicBytes, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,272 @@
+package nl.luminis.articles.pubsub.publisher.spool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only log of records in memory-mapped segment files of a fixed size. Records are read in the order in which they were appended and
+ * stay on disk until they are acknowledged, so they survive a restart. A checkpoint file holds the position up to which records were
+ * acknowledged; segments before it are deleted.
+ *
+ * <p>Every record is preceded by its length and a CRC32 of its content. A length of 0 marks the end of a segment, as new segment files are
+ * filled with zeros. A record whose checksum does not match, which can only be the last one written before a crash, also ends its segment.
+ */
+@Slf4j
+public class SegmentLog implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    // IDs of the segments on disk, including the one being written.
+    private final TreeSet<Long> segments;
+
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+
+    private long readSegment;
+    private ByteBuffer readBuffer;
+    private int readPosition;
+    // Position after the records returned by the last peek, which becomes the read position when they are acknowledged.
+    private long peekedSegment;
+    private int peekedPosition;
+
+    private boolean closed;
+
+    /**
+     * @param segmentSize the size of every segment file, which limits the size of a single record
+     * @param maxSegments the maximum number of segment files, after which appends are refused until records are acknowledged
+     */
+    public SegmentLog(Path directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= HEADER_SIZE || maxSegments < 2) {
+            throw new IllegalArgumentException("A segment log needs at least two segments of more than " + HEADER_SIZE + " bytes");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.segments = new TreeSet<>(listSegments());
+
+        readCheckpoint();
+        // Earlier segments were acknowledged, but the process stopped before they were deleted.
+        while (!segments.isEmpty() && segments.first() < readSegment) {
+            deleteSegment(segments.first());
+        }
+
+        // Segments written by an earlier process are only read, new records always go to a new segment.
+        writeSegment = segments.isEmpty() ? readSegment : segments.last() + 1;
+        writeBuffer = createSegment(writeSegment);
+        if (!segments.contains(readSegment) || readSegment == writeSegment) {
+            readSegment = segments.first();
+            readPosition = 0;
+        }
+        readBuffer = mapSegment(readSegment);
+        peekedSegment = readSegment;
+        peekedPosition = readPosition;
+    }
+
+    /**
+     * @return false when the record does not fit in the current segment and the maximum number of segments has been reached
+     * @throws IllegalArgumentException when the record is larger than a segment
+     */
+    public synchronized boolean append(byte[] record) throws IOException {
+        checkOpen();
+        if (HEADER_SIZE + record.length > segmentSize) {
+            throw new IllegalArgumentException(String.format("A record of %d bytes does not fit in a segment of %d bytes", record.length,
+                segmentSize));
+        }
+        if (writeBuffer.remaining() < HEADER_SIZE + record.length) {
+            if (segments.size() >= maxSegments) {
+                return false;
+            }
+            writeBuffer.force();
+            writeSegment++;
+            writeBuffer = createSegment(writeSegment);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        int position = writeBuffer.position();
+        // The length is written last, so that a crash halfway usually leaves a length of 0. The checksum catches the other cases, as the
+        // operating system may write the pages of a mapping back in any order.
+        writeBuffer.position(position + HEADER_SIZE);
+        writeBuffer.put(record);
+        writeBuffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        writeBuffer.putInt(position, record.length);
+        return true;
+    }
+
+    /**
+     * Returns up to the given number of records that follow the read position, without moving it. Calling this again returns the same
+     * records, until they are acknowledged.
+     */
+    public synchronized List<byte[]> peek(int maxRecords) throws IOException {
+        checkOpen();
+        List<byte[]> records = new ArrayList<>();
+        long segment = readSegment;
+        ByteBuffer buffer = readBuffer;
+        int position = readPosition;
+        while (true) {
+            byte[] record = readRecord(segment, buffer, position);
+            if (record == null) {
+                if (segment == writeSegment) {
+                    break;
+                }
+                // Move past the end of a full segment even when no more records are needed, so that acknowledging deletes it.
+                segment = segments.higher(segment);
+                buffer = mapSegment(segment);
+                position = 0;
+            } else if (records.size() < maxRecords) {
+                records.add(record);
+                position += HEADER_SIZE + record.length;
+            } else {
+                break;
+            }
+        }
+        peekedSegment = segment;
+        peekedPosition = position;
+        return records;
+    }
+
+    /**
+     * Moves the read position past the records returned by the last peek, and deletes the segments that were read completely.
+     */
+    public synchronized void acknowledge() throws IOException {
+        checkOpen();
+        if (peekedSegment != readSegment) {
+            readBuffer = mapSegment(peekedSegment);
+        }
+        readSegment = peekedSegment;
+        readPosition = peekedPosition;
+        writeCheckpoint();
+        while (segments.first() < readSegment) {
+            deleteSegment(segments.first());
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return readSegment == writeSegment && readPosition == writeBuffer.position();
+    }
+
+    /**
+     * @return the number of bytes from the read position up to the write position, including the unused ends of full segments
+     */
+    public synchronized long getSize() {
+        if (readSegment == writeSegment) {
+            return writeBuffer.position() - readPosition;
+        }
+        return (long) segmentSize * (segments.size() - 1) - readPosition + writeBuffer.position();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            writeBuffer.force();
+        }
+    }
+
+    private byte[] readRecord(long segment, ByteBuffer buffer, int position) {
+        int limit = segment == writeSegment ? writeBuffer.position() : buffer.limit();
+        if (position + HEADER_SIZE > limit) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + HEADER_SIZE + length > limit) {
+            return null;
+        }
+        byte[] record = new byte[length];
+        ByteBuffer content = buffer.duplicate();
+        content.position(position + HEADER_SIZE);
+        content.get(record);
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+            log.warn("Record at position {} of segment {} is corrupt, skipping the rest of the segment", position, segment);
+            return null;
+        }
+        return record;
+    }
+
+    private MappedByteBuffer createSegment(long segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed, and extends the file with zeros.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            segments.add(segment);
+            return buffer;
+        }
+    }
+
+    private ByteBuffer mapSegment(long segment) throws IOException {
+        if (segment == writeSegment) {
+            return writeBuffer.duplicate();
+        }
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), segmentSize));
+        }
+    }
+
+    private void deleteSegment(long segment) throws IOException {
+        Files.deleteIfExists(segmentPath(segment));
+        segments.remove(segment);
+    }
+
+    private void readCheckpoint() throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            readSegment = buffer.getLong();
+            readPosition = buffer.getInt();
+        } else {
+            readSegment = segments.isEmpty() ? 0L : segments.first();
+            readPosition = 0;
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(readSegment).putInt(readPosition);
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.write(temporary, buffer.array());
+        // The checkpoint is replaced in one step, so a crash leaves either the old or the new one.
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Long> ids = new ArrayList<>();
+            files
+                .map(file -> file.getFileName().toString())
+                .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                .forEach(name -> ids.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+            return ids;
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        // Zero-padded, so that the files are listed in the order in which they were written.
+        return directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Segment log in " + directory + " is closed");
+        }
+    }
+}
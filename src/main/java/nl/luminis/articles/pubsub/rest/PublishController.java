@@ -1,32 +1,128 @@
 package nl.luminis.articles.pubsub.rest;
 
+import com.google.api.gax.rpc.ApiException;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
 import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.dto.PublishResult;
+import nl.luminis.articles.pubsub.dto.StreamPublishResult;
 import nl.luminis.articles.pubsub.publisher.DummyMessagePublisher;
+import nl.luminis.articles.pubsub.publisher.MessageOrderingDisabledException;
+import nl.luminis.articles.pubsub.publisher.PublishRejectedException;
+import nl.luminis.articles.pubsub.publisher.StreamPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+@Slf4j
 @RestController
 public class PublishController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final DummyMessagePublisher publisher;
+    private final StreamPublisher streamPublisher;
 
-    public PublishController(DummyMessagePublisher publisher) {
+    public PublishController(DummyMessagePublisher publisher, StreamPublisher streamPublisher) {
         this.publisher = publisher;
+        this.streamPublisher = streamPublisher;
     }
 
     @ApiOperation(value = "Publish a new message for the subscriber to process")
     @ApiResponses(value = {
-        @ApiResponse(code = 201, message = "Successfully published message")
+        @ApiResponse(code = 201, message = "Successfully published message"),
+        @ApiResponse(code = 429, message = "Too many messages are waiting to be published")
     })
     @PostMapping("publish")
     public ResponseEntity<Void> publish(@RequestBody DummyMessage dummyMessage) {
         publisher.publish(dummyMessage);
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
+
+    @ApiOperation(value = "Publish a new message on the given topic, messages with the same ordering key are delivered in order. "
+        + "A message with an ordering key is only answered once Pub/Sub has accepted it")
+    @ApiResponses(value = {
+        @ApiResponse(code = 201, message = "Successfully published message"),
+        @ApiResponse(code = 400, message = "An ordering key was given, but message ordering is not enabled for the topic"),
+        @ApiResponse(code = 429, message = "Too many messages are waiting to be published"),
+        @ApiResponse(code = 503, message = "Pub/Sub did not accept a message with an ordering key")
+    })
+    @PostMapping("topics/{topic}/publish")
+    public ResponseEntity<Void> publish(@PathVariable String topic,
+        @RequestParam(defaultValue = DummyMessagePublisher.NO_ORDERING_KEY) String orderingKey, @RequestBody DummyMessage dummyMessage) {
+        publisher.publish(topic, orderingKey, dummyMessage);
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
+
+    @ApiOperation(value = "Publish a new message and respond once Pub/Sub has accepted it")
+    @ApiResponses(value = {
+        @ApiResponse(code = 201, message = "Successfully published message, the result contains the server-assigned message ID or is marked "
+            + "as spooled"),
+        @ApiResponse(code = 429, message = "Too many messages are waiting to be published"),
+        @ApiResponse(code = 503, message = "Pub/Sub did not accept the message")
+    })
+    @PostMapping("publish/async")
+    public CompletableFuture<ResponseEntity<PublishResult>> publishAsync(@RequestBody DummyMessage dummyMessage) {
+        // The servlet thread is released while waiting; Spring completes the request once the future completes.
+        return publisher
+            .publishAsync(dummyMessage)
+            .thenApply(messageId -> ResponseEntity
+                .status(HttpStatus.CREATED)
+                .body(DummyMessagePublisher.SPOOLED.equals(messageId)
+                    ? PublishResult.builder().id(dummyMessage.getId()).spooled(true).build()
+                    : PublishResult.builder().id(dummyMessage.getId()).messageId(messageId).build()));
+    }
+
+    @ApiOperation(value = "Publish a batch of messages for the subscriber to process")
+    @ApiResponses(value = {
+        @ApiResponse(code = 201, message = "Successfully published all messages"),
+        @ApiResponse(code = 207, message = "One or more messages could not be published, see the error of each result")
+    })
+    @PostMapping("publish/batch")
+    public ResponseEntity<List<PublishResult>> publishBatch(@RequestBody List<DummyMessage> dummyMessages) {
+        List<PublishResult> results = publisher.publishAll(dummyMessages);
+        boolean allPublished = results.stream().allMatch(result -> result.getError() == null);
+        return ResponseEntity.status(allPublished ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS).body(results);
+    }
+
+    @ApiOperation(value = "Publish newline-delimited JSON messages while the request body is being read")
+    @ApiResponses(value = {
+        @ApiResponse(code = 201, message = "Successfully published all messages"),
+        @ApiResponse(code = 207, message = "One or more messages could not be published, see the number of failed messages"),
+        @ApiResponse(code = 400, message = "The body contains malformed JSON, the messages before it were published")
+    })
+    @PostMapping(value = "publish/stream", consumes = NDJSON)
+    public ResponseEntity<StreamPublishResult> publishStream(InputStream body) throws InterruptedException {
+        StreamPublishResult result = streamPublisher.publish(body);
+        HttpStatus status = result.getError() != null
+            ? HttpStatus.BAD_REQUEST
+            : result.getFailed() > 0 ? HttpStatus.MULTI_STATUS : HttpStatus.CREATED;
+        return ResponseEntity.status(status).body(result);
+    }
+
+    @ExceptionHandler(PublishRejectedException.class)
+    public ResponseEntity<String> handlePublishRejected(PublishRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+    }
+
+    @ExceptionHandler(MessageOrderingDisabledException.class)
+    public ResponseEntity<String> handleMessageOrderingDisabled(MessageOrderingDisabledException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+
+    @ExceptionHandler(ApiException.class)
+    public ResponseEntity<String> handlePublishFailed(ApiException e) {
+        log.warn("Pub/Sub did not accept the message", e);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+    }
 }
@@ -1,32 +1,78 @@
 package nl.luminis.articles.pubsub.subscriber;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.cloud.pubsub.v1.AckReplyConsumer;
 import com.google.cloud.pubsub.v1.MessageReceiver;
 import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.pubsub.v1.ProjectTopicName;
 import com.google.pubsub.v1.PubsubMessage;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.claimcheck.BlobStore;
+import nl.luminis.articles.pubsub.codec.UnreadablePayloadException;
 import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.mapper.MessageAttributes;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageReader;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.metrics.SubscriberMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import nl.luminis.articles.pubsub.subscriber.batch.BatchHandler;
+import nl.luminis.articles.pubsub.subscriber.batch.MicroBatcher;
+import nl.luminis.articles.pubsub.subscriber.dedup.DeduplicationKey;
+import nl.luminis.articles.pubsub.subscriber.dedup.Deduplicator;
+import nl.luminis.articles.pubsub.subscriber.retry.RetryHandler;
+import nl.luminis.articles.pubsub.subscriber.routing.MessageRouter;
+import nl.luminis.articles.pubsub.subscriber.routing.RoutedMessage;
+import nl.luminis.articles.pubsub.subscriber.routing.RoutedMessageHandler;
+import nl.luminis.articles.pubsub.subscriber.routing.RoutingAction;
+import nl.luminis.articles.pubsub.subscriber.sink.MessageSink;
 import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
 public class DummyMessageSubscriber implements MessageReceiver {
 
-    private final ObjectMapper objectMapper;
+    private final PubsubMessageReader pubsubMessageReader;
+    private final MessageSink<DummyMessage> sink;
+    private final SubscriberMetrics metrics;
+    // Only present when a BatchHandler bean was declared, messages go to the sink one by one otherwise.
+    private final MicroBatcher<DummyMessage> batcher;
+    // Only present when deduplication is enabled for the subscription.
+    private final Deduplicator deduplicator;
+    // Only present when routing rules are configured for the subscription.
+    private final MessageRouter router;
+    // Only present when offloaded payloads should be deleted once their message was processed.
+    private final BlobStore claimCheckStore;
+    private final RetryHandler retryHandler;
     private final Subscriber subscriber;
-    private final List<DummyMessage> messages;
 
-    public DummyMessageSubscriber(PubSubConfig pubSubConfig, SubscriberFactory subscriberFactory, ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
-        this.subscriber = subscriberFactory.build(pubSubConfig.getProjectSubscriptionName(), this);
-        this.messages = new ArrayList<>();
+    public DummyMessageSubscriber(PubSubConfig pubSubConfig, SubscriberFactory subscriberFactory, PubsubMessageReader pubsubMessageReader,
+        MessageSink<DummyMessage> sink, PubSubMetrics pubSubMetrics, Optional<BatchHandler<List<DummyMessage>>> batchHandler,
+        Optional<Map<String, RoutedMessageHandler>> routedMessageHandlers, Optional<BlobStore> blobStore, PublisherRegistry publisherRegistry) {
+        SubscriberProperties properties = pubSubConfig.getSubscriberProperties(pubSubConfig.getSubscriptionName());
+        this.pubsubMessageReader = pubsubMessageReader;
+        this.sink = sink;
+        this.metrics = pubSubMetrics.forSubscription(pubSubConfig.getSubscriptionName());
+        this.metrics.registerBacklog(sink, MessageSink::size);
+        this.batcher = batchHandler
+            .map(handler -> new MicroBatcher<>(pubSubConfig.getSubscriptionName(), properties.getBatchMaxMessages(),
+                properties.getBatchMaxBytes(), properties.getBatchMaxDelayMillis(), handler))
+            .orElse(null);
+        this.deduplicator = createDeduplicator(properties);
+        MessageRouter messageRouter = new MessageRouter(pubSubConfig.getRoutingRules(pubSubConfig.getSubscriptionName()),
+            routedMessageHandlers.orElse(Map.of()));
+        this.router = messageRouter.isEmpty() ? null : messageRouter;
+        this.claimCheckStore = properties.isClaimCheckDeleteAfterAck() ? blobStore.orElse(null) : null;
+        ProjectTopicName deadLetterTopic = properties.getDeadLetterTopic().isEmpty()
+            ? null
+            : pubSubConfig.getProjectTopicName(properties.getDeadLetterTopic());
+        this.retryHandler = new RetryHandler(pubSubConfig.getSubscriptionName(), properties, deadLetterTopic, publisherRegistry, metrics);
+        this.subscriber = subscriberFactory.build(pubSubConfig.getProjectSubscriptionName(), this, properties);
     }
 
     @PostConstruct
@@ -36,32 +82,177 @@ public class DummyMessageSubscriber implements MessageReceiver {
 
     @PreDestroy
     public void preDestroy() {
-        subscriber.stopAsync();
+        // Stopping waits until the received messages were acked or nacked, which the batcher's timer still does for a pending batch.
+        subscriber.stopAsync().awaitTerminated();
+        if (batcher != null) {
+            batcher.close();
+        }
+        retryHandler.close();
     }
 
     @Override
     public void receiveMessage(PubsubMessage pubsubMessage, AckReplyConsumer consumer) {
+        long startNanos = metrics.recordReceived(pubsubMessage.getData().size());
         try {
-            String data = new String(pubsubMessage.getData().toByteArray());
-            log.trace(data);
+            if (log.isTraceEnabled()) {
+                log.trace(pubsubMessage.getData().toStringUtf8());
+            }
+            if (deduplicator != null && deduplicator.isDuplicate(pubsubMessage)) {
+                skipDuplicate(consumer, startNanos);
+                return;
+            }
+            MessageRouter.Route route = router != null ? router.route(pubsubMessage) : null;
+            if (route != null) {
+                metrics.recordRouted(route.getAction());
+                if (route.getAction() == RoutingAction.SKIP) {
+                    log.debug("Skipping message with ID {} on its attributes", pubsubMessage.getMessageId());
+                    consumer.ack();
+                    releaseClaimCheck(pubsubMessage);
+                    metrics.recordAck(startNanos);
+                    return;
+                }
+                if (route.getAction() == RoutingAction.HANDLE) {
+                    handleRouted(pubsubMessage, route.getHandler(), consumer, startNanos);
+                    return;
+                }
+            }
             try {
-                DummyMessage message = objectMapper.readValue(data, DummyMessage.class);
-                messages.add(message);
-                log.debug("Received message with ID {}", message.getId());
-                consumer.ack();
-            } catch (JsonProcessingException e) {
-                log.error("Invalid JSON offered, cannot recover", e);
-                log.info(data);
+                DummyMessage message = pubsubMessageReader.read(pubsubMessage, DummyMessage.class);
+                if (deduplicator != null) {
+                    if (deduplicator.isDuplicate(message)) {
+                        skipDuplicate(consumer, startNanos);
+                        return;
+                    }
+                    metrics.recordDeduplication(false);
+                }
+
+                if (batcher != null) {
+                    AckReplyConsumer batchConsumer = new BatchAckReplyConsumer(consumer, startNanos, pubsubMessage, message);
+                    batcher.add(message, pubsubMessage.getData().size(), batchConsumer);
+                } else if (sink.offer(message)) {
+                    log.debug("Received message with ID {}", message.getId());
+                    consumer.ack();
+                    markProcessed(pubsubMessage, message);
+                    releaseClaimCheck(pubsubMessage);
+                    metrics.recordAck(startNanos);
+                } else {
+                    log.debug("Sink is full, message with ID {} will be retried", message.getId());
+                    retryHandler.retry(pubsubMessage, new MeteredAckReplyConsumer(consumer, startNanos, pubsubMessage, null),
+                        "Sink is full");
+                }
+            } catch (UnreadablePayloadException e) {
+                metrics.recordUnreadable();
                 // We don't want Pub/Sub to resend the message as its content is not parsable.
-                consumer.ack();
+                log.error("Unreadable payload offered, cannot recover", e);
+                if (!retryHandler.hasDeadLetterTopic()) {
+                    log.info(pubsubMessage.getData().toStringUtf8());
+                }
+                retryHandler.deadLetter(pubsubMessage, new MeteredAckReplyConsumer(consumer, startNanos, pubsubMessage, null),
+                    "Unreadable payload: " + e.getMessage());
             }
         } catch (Exception e) {
             log.error("Could not process message", e);
+            retryHandler.retry(pubsubMessage, new MeteredAckReplyConsumer(consumer, startNanos, pubsubMessage, null), e.toString());
+        }
+    }
+
+    private void handleRouted(PubsubMessage pubsubMessage, RoutedMessageHandler handler, AckReplyConsumer consumer, long startNanos)
+        throws Exception {
+        try {
+            handler.handle(new RoutedMessage(pubsubMessage, pubsubMessageReader));
+        } catch (UnreadablePayloadException e) {
+            metrics.recordUnreadable();
+            log.error("Unreadable payload offered to routed handler, cannot recover", e);
+            retryHandler.deadLetter(pubsubMessage, new MeteredAckReplyConsumer(consumer, startNanos, pubsubMessage, null),
+                "Unreadable payload: " + e.getMessage());
+            return;
+        }
+        new MeteredAckReplyConsumer(consumer, startNanos, pubsubMessage, null).ack();
+        releaseClaimCheck(pubsubMessage);
+    }
+
+    private void skipDuplicate(AckReplyConsumer consumer, long startNanos) {
+        metrics.recordDeduplication(true);
+        consumer.ack();
+        metrics.recordAck(startNanos);
+    }
+
+    private void markProcessed(PubsubMessage pubsubMessage, DummyMessage message) {
+        if (deduplicator != null) {
+            deduplicator.markProcessed(pubsubMessage, message);
+        }
+    }
+
+    /**
+     * Deletes the offloaded payload of a message that was processed. Messages that were dead-lettered keep their payload, as the copy on
+     * the dead-letter topic refers to the same blob.
+     */
+    private void releaseClaimCheck(PubsubMessage pubsubMessage) {
+        String claimCheck = pubsubMessage.getAttributesOrDefault(MessageAttributes.CLAIM_CHECK, null);
+        if (claimCheckStore == null || claimCheck == null) {
+            return;
+        }
+        try {
+            claimCheckStore.delete(claimCheck);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Could not delete offloaded payload {} of message with ID {}", claimCheck, pubsubMessage.getMessageId(), e);
+        }
+    }
+
+    private Deduplicator createDeduplicator(SubscriberProperties properties) {
+        if (properties.getDeduplicationKey() == DeduplicationKey.NONE) {
+            return null;
+        }
+        Deduplicator result = new Deduplicator(properties.getDeduplicationKey(), properties.getDeduplicationMaxEntries(),
+            properties.getDeduplicationTtlSeconds() * 1000L);
+        metrics.registerDeduplicationEvictions(result, Deduplicator::getEvictionCount);
+        return result;
+    }
+
+    private class MeteredAckReplyConsumer implements AckReplyConsumer {
+
+        protected final AckReplyConsumer consumer;
+        protected final long startNanos;
+        protected final PubsubMessage pubsubMessage;
+        protected final DummyMessage message;
+
+        MeteredAckReplyConsumer(AckReplyConsumer consumer, long startNanos, PubsubMessage pubsubMessage, DummyMessage message) {
+            this.consumer = consumer;
+            this.startNanos = startNanos;
+            this.pubsubMessage = pubsubMessage;
+            this.message = message;
+        }
+
+        @Override
+        public void ack() {
+            consumer.ack();
+            markProcessed(pubsubMessage, message);
+            // Without a message, the payload was never processed and the message is acked after being dead-lettered.
+            if (message != null) {
+                releaseClaimCheck(pubsubMessage);
+            }
+            metrics.recordAck(startNanos);
+        }
+
+        @Override
+        public void nack() {
             consumer.nack();
+            metrics.recordNack(startNanos);
         }
     }
 
-    public List<DummyMessage> getMessages() {
-        return messages;
+    // A message of a batch that failed is retried like a single message that failed.
+    private class BatchAckReplyConsumer extends MeteredAckReplyConsumer {
+
+        BatchAckReplyConsumer(AckReplyConsumer consumer, long startNanos, PubsubMessage pubsubMessage, DummyMessage message) {
+            super(consumer, startNanos, pubsubMessage, message);
+        }
+
+        @Override
+        public void nack() {
+            // The retry handler only acks a message after dead-lettering it, which must keep its offloaded payload.
+            retryHandler.retry(pubsubMessage, new MeteredAckReplyConsumer(consumer, startNanos, pubsubMessage, null),
+                "The batch it was part of could not be handled");
+        }
     }
 }
@@ -0,0 +1,35 @@
+package nl.luminis.articles.pubsub.subscriber;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+
+public final class MessageIds {
+
+    private MessageIds() {
+    }
+
+    /**
+     * @return the message ID as a long, to be used as key of a {@link nl.luminis.articles.pubsub.subscriber.cache.LongTtlCache}
+     */
+    public static long toLong(String messageId) {
+        // Pub/Sub assigns numeric message IDs, other servers may not.
+        if (isNumeric(messageId)) {
+            return Long.parseLong(messageId);
+        }
+        return Hashing.murmur3_128().hashString(messageId, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static boolean isNumeric(String messageId) {
+        // 18 digits always fit in a long.
+        if (messageId.isEmpty() || messageId.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < messageId.length(); i++) {
+            char c = messageId.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package nl.luminis.articles.pubsub.subscriber;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Hands messages to a {@link StripedExecutor}, so that messages with the same ordering key are processed one at a time and in order, while
+ * messages with different keys are processed in parallel. This relies on receiving the messages in order, i.e. on a single-threaded
+ * subscriber executor and a subscription with message ordering enabled.
+ *
+ * <p>Order is kept for messages that succeed the first time only. A failed message is nacked after a backoff, which does not hold up its
+ * stripe, so later messages with the same key are processed and acked before the failed one is redelivered.
+ */
+public class OrderedMessageReceiver implements MessageReceiver {
+
+    private final MessageReceiver delegate;
+    private final StripedExecutor executor;
+
+    public OrderedMessageReceiver(MessageReceiver delegate, StripedExecutor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public void receiveMessage(PubsubMessage message, AckReplyConsumer consumer) {
+        try {
+            executor.execute(message.getOrderingKey(), () -> delegate.receiveMessage(message, consumer));
+        } catch (RejectedExecutionException e) {
+            // The subscriber is stopping, let Pub/Sub redeliver the message.
+            consumer.nack();
+        }
+    }
+}
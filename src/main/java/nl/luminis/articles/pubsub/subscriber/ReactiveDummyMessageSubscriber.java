@@ -0,0 +1,221 @@
+package nl.luminis.articles.pubsub.subscriber;
+
+import com.google.api.core.ApiService;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PubsubMessage;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.codec.UnreadablePayloadException;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageReader;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.metrics.SubscriberMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import nl.luminis.articles.pubsub.subscriber.dedup.DeduplicationKey;
+import nl.luminis.articles.pubsub.subscriber.dedup.Deduplicator;
+import nl.luminis.articles.pubsub.subscriber.retry.RetryHandler;
+import org.reactivestreams.Publisher;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink.OverflowStrategy;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Reactive Streams API for consuming a subscription. A message is only acked once it has been processed, and the subscriber's flow control
+ * limits the number of messages that have not been acked yet. As long as downstream does not request more, processed messages are not
+ * acked, so Pub/Sub stops sending new ones when the flow control limit is reached. The buffer between the subscriber and downstream is
+ * bounded by gcloud.pubsub.subscription.flow-control.max-outstanding-element-count as well; should it overflow anyway, the message that
+ * does not fit is nacked. When the flux is cancelled, the messages that are still buffered are nacked as well, as the subscriber only stops
+ * once every received message was acked or nacked.
+ *
+ * <p>Failures are handled like {@link DummyMessageSubscriber} does: failed messages are retried with a backoff and dead-lettered after
+ * too many attempts, unreadable payloads are dead-lettered right away, and duplicates are acked without being processed.
+ */
+@Slf4j
+@Service
+public class ReactiveDummyMessageSubscriber {
+
+    private final PubSubConfig pubSubConfig;
+    private final SubscriberFactory subscriberFactory;
+    private final PubsubMessageReader pubsubMessageReader;
+    private final PubSubMetrics pubSubMetrics;
+    private final PublisherRegistry publisherRegistry;
+
+    public ReactiveDummyMessageSubscriber(PubSubConfig pubSubConfig, SubscriberFactory subscriberFactory,
+        PubsubMessageReader pubsubMessageReader, PubSubMetrics pubSubMetrics, PublisherRegistry publisherRegistry) {
+        this.pubSubConfig = pubSubConfig;
+        this.subscriberFactory = subscriberFactory;
+        this.pubsubMessageReader = pubsubMessageReader;
+        this.pubSubMetrics = pubSubMetrics;
+        this.publisherRegistry = publisherRegistry;
+    }
+
+    /**
+     * Starts a subscriber when the returned flux is subscribed to and stops it when the subscription is cancelled. Every message is passed
+     * to the processor, one at a time. It is acked when the processor completes and retried when it fails; a failure does not end the
+     * flux.
+     *
+     * @return the messages that were processed and acked
+     */
+    public Flux<DummyMessage> subscribe(String subscription, Function<DummyMessage, ? extends Publisher<?>> processor) {
+        return Flux.defer(() -> {
+            SubscriberProperties properties = pubSubConfig.getSubscriberProperties(subscription);
+            MessageProcessor messageProcessor = new MessageProcessor(subscription, properties, processor);
+            return receive(subscription, properties)
+                .concatMap(messageProcessor::process)
+                // Applies to the buffers of all operators above, which discard their messages when the flux is cancelled.
+                .doOnDiscard(ReceivedMessage.class, received -> received.consumer.nack())
+                .doFinally(signal -> messageProcessor.close());
+        });
+    }
+
+    private Flux<ReceivedMessage> receive(String subscription, SubscriberProperties properties) {
+        int maxBuffered = (int) Math.min(Integer.MAX_VALUE, Math.max(1L, properties.getMaxOutstandingElementCount()));
+        return Flux
+            .<ReceivedMessage>create(sink -> {
+                Subscriber subscriber = subscriberFactory.build(pubSubConfig.getProjectSubscriptionName(subscription),
+                    (message, consumer) -> sink.next(new ReceivedMessage(message, consumer)), properties);
+                subscriber.addListener(new ApiService.Listener() {
+                    @Override
+                    public void failed(ApiService.State from, Throwable failure) {
+                        sink.error(failure);
+                    }
+                }, Runnable::run);
+                sink.onDispose(subscriber::stopAsync);
+                subscriber.startAsync();
+            }, OverflowStrategy.BUFFER)
+            .onBackpressureBuffer(maxBuffered, received -> {
+                log.warn("Buffer of {} messages is full, message with ID {} will be redelivered", maxBuffered,
+                    received.message.getMessageId());
+                received.consumer.nack();
+            }, BufferOverflowStrategy.DROP_LATEST);
+    }
+
+    /**
+     * Holds the state of a single subscription to the flux, which is released when the subscription ends.
+     */
+    private class MessageProcessor implements AutoCloseable {
+
+        private final Function<DummyMessage, ? extends Publisher<?>> processor;
+        private final SubscriberMetrics metrics;
+        // Only present when deduplication is enabled for the subscription.
+        private final Deduplicator deduplicator;
+        private final RetryHandler retryHandler;
+
+        MessageProcessor(String subscription, SubscriberProperties properties, Function<DummyMessage, ? extends Publisher<?>> processor) {
+            this.processor = processor;
+            this.metrics = pubSubMetrics.forSubscription(subscription);
+            this.deduplicator = properties.getDeduplicationKey() == DeduplicationKey.NONE
+                ? null
+                : new Deduplicator(properties.getDeduplicationKey(), properties.getDeduplicationMaxEntries(),
+                    properties.getDeduplicationTtlSeconds() * 1000L);
+            ProjectTopicName deadLetterTopic = properties.getDeadLetterTopic().isEmpty()
+                ? null
+                : pubSubConfig.getProjectTopicName(properties.getDeadLetterTopic());
+            this.retryHandler = new RetryHandler(subscription, properties, deadLetterTopic, publisherRegistry, metrics);
+        }
+
+        Mono<DummyMessage> process(ReceivedMessage received) {
+            if (deduplicator != null && deduplicator.isDuplicate(received.message)) {
+                skipDuplicate(received);
+                return Mono.empty();
+            }
+            DummyMessage message;
+            try {
+                message = pubsubMessageReader.read(received.message, DummyMessage.class);
+            } catch (UnreadablePayloadException e) {
+                metrics.recordUnreadable();
+                log.error("Unreadable payload offered, cannot recover", e);
+                retryHandler.deadLetter(received.message, received.consumer, "Unreadable payload: " + e.getMessage());
+                return Mono.empty();
+            } catch (IOException e) {
+                log.error("Could not read message", e);
+                retryHandler.retry(received.message, received.consumer, e.toString());
+                return Mono.empty();
+            }
+            if (deduplicator != null) {
+                if (deduplicator.isDuplicate(message)) {
+                    skipDuplicate(received);
+                    return Mono.empty();
+                }
+                metrics.recordDeduplication(false);
+            }
+
+            return Flux
+                .from(processor.apply(message))
+                .then(Mono.just(message))
+                .doOnSuccess(processed -> {
+                    received.consumer.ack();
+                    if (deduplicator != null) {
+                        deduplicator.markProcessed(received.message, message);
+                    }
+                })
+                .doOnError(e -> retryHandler.retry(received.message, received.consumer, e.toString()))
+                .doFinally(signal -> {
+                    if (signal == SignalType.CANCEL) {
+                        // Cancelled before it was processed, another subscriber can process it right away.
+                        received.consumer.nack();
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.error("Could not process message with ID {}", message.getId(), e);
+                    return Mono.empty();
+                });
+        }
+
+        private void skipDuplicate(ReceivedMessage received) {
+            metrics.recordDeduplication(true);
+            received.consumer.ack();
+        }
+
+        @Override
+        public void close() {
+            retryHandler.close();
+        }
+    }
+
+    private static class ReceivedMessage {
+
+        private final PubsubMessage message;
+        private final AckReplyConsumer consumer;
+
+        ReceivedMessage(PubsubMessage message, AckReplyConsumer consumer) {
+            this.message = message;
+            this.consumer = new SingleReplyConsumer(consumer);
+        }
+    }
+
+    /**
+     * Passes on the first reply only. A message that overflows the buffer is nacked and discarded, and discarding nacks it as well.
+     */
+    private static class SingleReplyConsumer implements AckReplyConsumer {
+
+        private final AckReplyConsumer consumer;
+        private final AtomicBoolean replied = new AtomicBoolean();
+
+        SingleReplyConsumer(AckReplyConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void ack() {
+            if (replied.compareAndSet(false, true)) {
+                consumer.ack();
+            }
+        }
+
+        @Override
+        public void nack() {
+            if (replied.compareAndSet(false, true)) {
+                consumer.nack();
+            }
+        }
+    }
+}
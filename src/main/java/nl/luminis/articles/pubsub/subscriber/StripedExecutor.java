@@ -0,0 +1,66 @@
+package nl.luminis.articles.pubsub.subscriber;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks with the same key one after the other, in the order in which they were submitted, while tasks with different keys run in
+ * parallel. Every key is assigned to one of a fixed number of single-threaded stripes. Tasks without a key go to the stripes round-robin.
+ */
+public class StripedExecutor {
+
+    private final ExecutorService[] stripes;
+    private final AtomicInteger nextStripe;
+
+    public StripedExecutor(int stripeCount, String threadNamePrefix) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("A striped executor needs at least one stripe");
+        }
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(threadNamePrefix + "-%d").setDaemon(true).build();
+        this.stripes = new ExecutorService[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+        this.nextStripe = new AtomicInteger();
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * @throws java.util.concurrent.RejectedExecutionException when the executor has been shut down
+     */
+    public void execute(String key, Runnable task) {
+        stripes[getStripe(key)].execute(task);
+    }
+
+    int getStripe(String key) {
+        if (key == null || key.isEmpty()) {
+            return Math.floorMod(nextStripe.getAndIncrement(), stripes.length);
+        }
+        // Spread the high bits, as keys that only differ in their last characters often have hash codes that only differ in the low bits.
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), stripes.length);
+    }
+
+    public void shutdown() {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService stripe : stripes) {
+            if (!stripe.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -6,7 +6,11 @@ import com.google.cloud.pubsub.v1.MessageReceiver;
 import com.google.cloud.pubsub.v1.Subscriber;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.pubsub.v1.ProjectSubscriptionName;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.PubSubConfig;
 import nl.luminis.articles.pubsub.auth.CredentialsProviderFactory;
 import nl.luminis.articles.pubsub.auth.TransportChannelProviderFactory;
 import org.springframework.stereotype.Service;
@@ -15,34 +19,72 @@ import org.springframework.stereotype.Service;
 @Service
 public class SubscriberFactory {
 
+    private final PubSubConfig pubSubConfig;
     private final CredentialsProviderFactory credentialsProviderFactory;
     private final TransportChannelProviderFactory channelProviderFactory;
+    private final Map<String, SubscriberProperties> effectiveProperties;
 
-    public SubscriberFactory(CredentialsProviderFactory credentialsProviderFactory, TransportChannelProviderFactory channelProviderFactory) {
+    public SubscriberFactory(PubSubConfig pubSubConfig, CredentialsProviderFactory credentialsProviderFactory,
+        TransportChannelProviderFactory channelProviderFactory) {
+        this.pubSubConfig = pubSubConfig;
         this.credentialsProviderFactory = credentialsProviderFactory;
         this.channelProviderFactory = channelProviderFactory;
+        this.effectiveProperties = new ConcurrentHashMap<>();
     }
 
     public Subscriber build(ProjectSubscriptionName subscriptionName, MessageReceiver messageReceiver) {
-        log.info("Creating new subscriber for subscription {}", subscriptionName.toString());
+        return build(subscriptionName, messageReceiver, pubSubConfig.getSubscriberProperties(subscriptionName.getSubscription()));
+    }
+
+    public Subscriber build(ProjectSubscriptionName subscriptionName, MessageReceiver messageReceiver, SubscriberProperties properties) {
+        log.info("Creating new subscriber for subscription {} with {}", subscriptionName.toString(), properties);
+
+        StripedExecutor orderingExecutor = null;
+        MessageReceiver receiver = messageReceiver;
+        if (properties.isMessageOrdering()) {
+            orderingExecutor = new StripedExecutor(properties.getOrderingStripeCount(), subscriptionName.getSubscription() + "-ordered");
+            receiver = new OrderedMessageReceiver(messageReceiver, orderingExecutor);
+        }
 
         Subscriber subscriber = Subscriber
-            .newBuilder(subscriptionName, messageReceiver)
+            .newBuilder(subscriptionName, receiver)
             .setCredentialsProvider(credentialsProviderFactory.create())
             .setChannelProvider(channelProviderFactory.create())
+            .setFlowControlSettings(properties.toFlowControlSettings())
+            .setParallelPullCount(properties.getParallelPullCount())
+            .setExecutorProvider(properties.toExecutorProvider())
+            .setMaxAckExtensionPeriod(properties.toMaxAckExtensionPeriod())
             .build();
 
-        subscriber.addListener(createListener(subscriptionName), MoreExecutors.directExecutor());
+        subscriber.addListener(createListener(subscriptionName, orderingExecutor), MoreExecutors.directExecutor());
+        effectiveProperties.put(subscriptionName.toString(), properties);
 
         return subscriber;
     }
 
-    private Listener createListener(ProjectSubscriptionName subscriptionName) {
+    public Map<String, SubscriberProperties> getEffectiveProperties() {
+        return Collections.unmodifiableMap(effectiveProperties);
+    }
+
+    private Listener createListener(ProjectSubscriptionName subscriptionName, StripedExecutor orderingExecutor) {
         return new Listener() {
             @Override
             public void failed(ApiService.State from, Throwable failure) {
                 log.error("An error occurred while subscribing to {} (previous state: {})", subscriptionName.toString(), from.name());
+                shutdown(orderingExecutor);
+            }
+
+            @Override
+            public void terminated(ApiService.State from) {
+                shutdown(orderingExecutor);
             }
         };
     }
+
+    private static void shutdown(StripedExecutor orderingExecutor) {
+        // Queued messages are still processed, but their acks are not sent once the subscriber has terminated, so they are redelivered.
+        if (orderingExecutor != null) {
+            orderingExecutor.shutdown();
+        }
+    }
 }
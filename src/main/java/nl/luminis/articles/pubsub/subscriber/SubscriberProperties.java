@@ -0,0 +1,92 @@
+package nl.luminis.articles.pubsub.subscriber;
+
+import com.google.api.gax.batching.FlowControlSettings;
+import com.google.api.gax.core.ExecutorProvider;
+import com.google.api.gax.core.InstantiatingExecutorProvider;
+import lombok.Builder;
+import lombok.Value;
+import nl.luminis.articles.pubsub.subscriber.dedup.DeduplicationKey;
+import org.threeten.bp.Duration;
+
+@Value
+@Builder
+public class SubscriberProperties {
+
+    // Flow control and ack extension defaults are equal to the ones the Pub/Sub client library uses.
+    public static final long DEFAULT_MAX_OUTSTANDING_ELEMENT_COUNT = 1000L;
+    public static final long DEFAULT_MAX_OUTSTANDING_REQUEST_BYTES = 100L * 1024L * 1024L;
+    public static final int DEFAULT_PARALLEL_PULL_COUNT = 1;
+    public static final int DEFAULT_EXECUTOR_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    public static final long DEFAULT_MAX_ACK_EXTENSION_PERIOD_SECONDS = 60L * 60L;
+    public static final boolean DEFAULT_MESSAGE_ORDERING = false;
+    public static final int DEFAULT_ORDERING_STRIPE_COUNT = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_BATCH_MAX_MESSAGES = 100;
+    public static final long DEFAULT_BATCH_MAX_BYTES = 1024L * 1024L;
+    public static final long DEFAULT_BATCH_MAX_DELAY_MILLIS = 100L;
+    public static final DeduplicationKey DEFAULT_DEDUPLICATION_KEY = DeduplicationKey.NONE;
+    public static final int DEFAULT_DEDUPLICATION_MAX_ENTRIES = 100_000;
+    public static final long DEFAULT_DEDUPLICATION_TTL_SECONDS = 10L * 60L;
+    public static final int DEFAULT_RETRY_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS = 1000L;
+    public static final long DEFAULT_RETRY_MAX_BACKOFF_MILLIS = 60L * 1000L;
+    public static final double DEFAULT_RETRY_BACKOFF_MULTIPLIER = 2.0;
+    public static final int DEFAULT_RETRY_MAX_TRACKED_MESSAGES = 10_000;
+    public static final String DEFAULT_DEAD_LETTER_TOPIC = "";
+    public static final int DEFAULT_PULL_MAX_MESSAGES = 1000;
+    public static final int DEFAULT_PULL_CONCURRENCY = 4;
+    public static final int DEFAULT_PULL_ACK_BATCH_SIZE = 1000;
+    public static final int DEFAULT_PULL_MAX_EMPTY_PULLS = 3;
+    public static final long DEFAULT_PULL_TIMEOUT_SECONDS = 10L;
+    public static final boolean DEFAULT_CLAIM_CHECK_DELETE_AFTER_ACK = true;
+
+    private long maxOutstandingElementCount;
+    private long maxOutstandingRequestBytes;
+    private int parallelPullCount;
+    private int executorThreadCount;
+    private long maxAckExtensionPeriodSeconds;
+    // Process messages with the same ordering key one at a time, in the order in which they were received.
+    private boolean messageOrdering;
+    private int orderingStripeCount;
+    // Thresholds for handing received messages to a BatchHandler, if there is one.
+    private int batchMaxMessages;
+    private long batchMaxBytes;
+    private long batchMaxDelayMillis;
+    private DeduplicationKey deduplicationKey;
+    private int deduplicationMaxEntries;
+    private long deduplicationTtlSeconds;
+    private int retryMaxAttempts;
+    private long retryInitialBackoffMillis;
+    private long retryMaxBackoffMillis;
+    private double retryBackoffMultiplier;
+    private int retryMaxTrackedMessages;
+    // Empty when failed messages should not be dead-lettered.
+    private String deadLetterTopic;
+    // Unary pull settings for draining a subscription with a PullDrainer.
+    private int pullMaxMessages;
+    private int pullConcurrency;
+    private int pullAckBatchSize;
+    private int pullMaxEmptyPulls;
+    private long pullTimeoutSeconds;
+    // Only safe when this subscription is the only one that reads the offloaded payloads.
+    private boolean claimCheckDeleteAfterAck;
+
+    public FlowControlSettings toFlowControlSettings() {
+        return FlowControlSettings
+            .newBuilder()
+            .setMaxOutstandingElementCount(maxOutstandingElementCount)
+            .setMaxOutstandingRequestBytes(maxOutstandingRequestBytes)
+            .build();
+    }
+
+    public ExecutorProvider toExecutorProvider() {
+        return InstantiatingExecutorProvider
+            .newBuilder()
+            // A single thread hands ordered messages to the striped executor in the order in which they were received.
+            .setExecutorThreadCount(messageOrdering ? 1 : executorThreadCount)
+            .build();
+    }
+
+    public Duration toMaxAckExtensionPeriod() {
+        return Duration.ofSeconds(maxAckExtensionPeriodSeconds);
+    }
+}
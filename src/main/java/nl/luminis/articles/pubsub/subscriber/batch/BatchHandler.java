@@ -0,0 +1,16 @@
+package nl.luminis.articles.pubsub.subscriber.batch;
+
+/**
+ * Processes a batch of received messages at once, e.g. with a single bulk insert. Batches can be handed over by several threads at the same
+ * time.
+ *
+ * @param <T> the type of batch, e.g. a list of messages
+ */
+@FunctionalInterface
+public interface BatchHandler<T> {
+
+    /**
+     * All messages in the batch are acked when this returns normally and nacked when it throws.
+     */
+    void handle(T batch) throws Exception;
+}
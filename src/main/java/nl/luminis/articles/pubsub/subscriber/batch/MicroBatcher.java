@@ -0,0 +1,164 @@
+package nl.luminis.articles.pubsub.subscriber.batch;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects received messages until a count, byte or time threshold is reached and then hands them to a {@link BatchHandler} at once. The
+ * messages are only acked or nacked after the batch was handled; until then the subscriber keeps extending their ack deadlines, like it
+ * does for any message that has not been acked yet.
+ *
+ * <p>A batch that reaches the count or byte threshold is handled on the thread that added the last message, which slows down receiving
+ * through flow control when the handler cannot keep up. A batch that reaches the time threshold is handled on the batcher's own thread.
+ *
+ * <p>Once the batcher is closed, messages that are still added are handled on their own, on the thread that adds them.
+ */
+@Slf4j
+public class MicroBatcher<T> implements AutoCloseable {
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 30L;
+
+    private final int maxMessages;
+    private final long maxBytes;
+    private final long maxDelayMillis;
+    private final BatchHandler<List<T>> handler;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private List<T> messages;
+    private List<AckReplyConsumer> consumers;
+    private long bytes;
+    // Identifies the current batch, so that a scheduled flush does not flush a later batch before its time.
+    private long batchNumber;
+    private boolean closed;
+
+    public MicroBatcher(String name, int maxMessages, long maxBytes, long maxDelayMillis, BatchHandler<List<T>> handler) {
+        if (maxMessages < 1) {
+            throw new IllegalArgumentException("A batch should contain at least one message");
+        }
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.maxDelayMillis = maxDelayMillis;
+        this.handler = handler;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+            .setNameFormat(name + "-batcher-%d")
+            .setDaemon(true)
+            .build());
+        // Flushes that are still scheduled when the batcher closes find their batch already handled.
+        this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        startBatch();
+    }
+
+    /**
+     * Adds a message to the current batch, which is handled right away when it is full.
+     *
+     * @param bytes the size of the message, counted towards the byte threshold
+     * @param consumer acks or nacks the message once its batch has been handled
+     */
+    public void add(T message, long bytes, AckReplyConsumer consumer) {
+        Batch<T> fullBatch;
+        synchronized (this) {
+            if (closed) {
+                fullBatch = new Batch<>(List.of(message), List.of(consumer));
+            } else {
+                fullBatch = addToBatch(message, bytes, consumer);
+            }
+        }
+        if (fullBatch != null) {
+            handle(fullBatch);
+        }
+    }
+
+    /**
+     * Handles the messages that were collected so far and stops the batcher, waiting for a batch that its timer is handling.
+     */
+    @Override
+    public void close() {
+        Batch<T> batch;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            batch = takeBatch();
+        }
+        handle(batch);
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Batch handler did not finish within {} seconds", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Batch<T> addToBatch(T message, long bytes, AckReplyConsumer consumer) {
+        messages.add(message);
+        consumers.add(consumer);
+        this.bytes += bytes;
+
+        if (messages.size() == 1 && maxMessages > 1) {
+            long scheduledBatch = batchNumber;
+            scheduler.schedule(() -> flush(scheduledBatch), maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        if (messages.size() >= maxMessages || this.bytes >= maxBytes) {
+            return takeBatch();
+        }
+        return null;
+    }
+
+    private void flush(long scheduledBatch) {
+        Batch<T> batch;
+        synchronized (this) {
+            if (scheduledBatch != batchNumber) {
+                // The batch was already handled because it was full.
+                return;
+            }
+            batch = takeBatch();
+        }
+        handle(batch);
+    }
+
+    private Batch<T> takeBatch() {
+        Batch<T> batch = new Batch<>(messages, consumers);
+        startBatch();
+        return batch;
+    }
+
+    private void startBatch() {
+        messages = new ArrayList<>(Math.min(maxMessages, 1024));
+        consumers = new ArrayList<>(Math.min(maxMessages, 1024));
+        bytes = 0;
+        batchNumber++;
+    }
+
+    private void handle(Batch<T> batch) {
+        if (batch.messages.isEmpty()) {
+            return;
+        }
+        try {
+            handler.handle(batch.messages);
+            batch.consumers.forEach(AckReplyConsumer::ack);
+            log.debug("Handled batch of {} messages", batch.messages.size());
+        } catch (Exception e) {
+            log.error("Could not handle batch of {} messages, they will be redelivered", batch.messages.size(), e);
+            batch.consumers.forEach(AckReplyConsumer::nack);
+        }
+    }
+
+    private static class Batch<T> {
+
+        private final List<T> messages;
+        private final List<AckReplyConsumer> consumers;
+
+        Batch(List<T> messages, List<AckReplyConsumer> consumers) {
+            this.messages = messages;
+            this.consumers = consumers;
+        }
+    }
+}
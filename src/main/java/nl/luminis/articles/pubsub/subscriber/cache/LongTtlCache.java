@@ -0,0 +1,142 @@
+package nl.luminis.articles.pubsub.subscriber.cache;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded map from long keys to long values, in which every entry expires a fixed time after it was last written. Keys, values and expiry
+ * times are kept in three primitive arrays, so an entry costs 24 bytes and no objects are allocated per entry.
+ *
+ * <p>A key can only be stored in the {@value #MAX_PROBES} slots following its hash. When all of them are taken by live entries, the one
+ * that expires first is evicted. This bounds both the memory and the time of every operation, at the cost of occasionally evicting an entry
+ * before it expired.
+ */
+public class LongTtlCache {
+
+    private static final int MAX_PROBES = 16;
+    // An expiry of 0 marks a slot that was never used, so lookups can stop there.
+    private static final long NEVER_USED = 0L;
+    // Removed entries get an expiry in the past, which keeps lookups for keys after them working.
+    private static final long REMOVED = 1L;
+
+    private final int mask;
+    private final long[] keys;
+    private final long[] values;
+    private final long[] expiries;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private long evictions;
+
+    public LongTtlCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, System::currentTimeMillis);
+    }
+
+    public LongTtlCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+        if (maxEntries < 1 || maxEntries > (1 << 30)) {
+            throw new IllegalArgumentException("Maximum number of entries must be between 1 and 2^30, got " + maxEntries);
+        }
+        int capacity = Math.max(MAX_PROBES, maxEntries <= 1 ? 1 : Integer.highestOneBit(maxEntries - 1) << 1);
+        this.mask = capacity - 1;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.expiries = new long[capacity];
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    public synchronized boolean containsKey(long key) {
+        return find(key, clock.getAsLong()) >= 0;
+    }
+
+    /**
+     * @return the value of the key, or the default value when the key is not present or has expired
+     */
+    public synchronized long get(long key, long defaultValue) {
+        int slot = find(key, clock.getAsLong());
+        return slot >= 0 ? values[slot] : defaultValue;
+    }
+
+    public synchronized void put(long key, long value) {
+        long now = clock.getAsLong();
+        int slot = find(key, now);
+        store(slot >= 0 ? slot : findFreeSlot(key, now), key, value, now);
+    }
+
+    /**
+     * Adds one to the value of the key, which is 0 when the key is not present, and restarts its time to live.
+     *
+     * @return the new value
+     */
+    public synchronized long increment(long key) {
+        long now = clock.getAsLong();
+        int slot = find(key, now);
+        long value = slot >= 0 ? values[slot] + 1 : 1;
+        store(slot >= 0 ? slot : findFreeSlot(key, now), key, value, now);
+        return value;
+    }
+
+    public synchronized void remove(long key) {
+        int slot = find(key, clock.getAsLong());
+        if (slot >= 0) {
+            expiries[slot] = REMOVED;
+        }
+    }
+
+    /**
+     * @return the number of live entries that were evicted to make room for another key
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    private int find(long key, long now) {
+        int start = hash(key);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = (start + i) & mask;
+            long expiry = expiries[slot];
+            if (expiry == NEVER_USED) {
+                return -1;
+            }
+            if (keys[slot] == key && expiry > now) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int findFreeSlot(long key, long now) {
+        int start = hash(key);
+        int victim = start & mask;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = (start + i) & mask;
+            if (expiries[slot] <= now) {
+                return slot;
+            }
+            if (expiries[slot] < expiries[victim]) {
+                victim = slot;
+            }
+        }
+        evictions++;
+        return victim;
+    }
+
+    private void store(int slot, long key, long value, long now) {
+        keys[slot] = key;
+        values[slot] = value;
+        expiries[slot] = now + ttlMillis;
+    }
+
+    private int hash(long key) {
+        // Finalizer of MurmurHash3, so that sequential keys such as message IDs do not end up in neighbouring slots.
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,10 @@
+package nl.luminis.articles.pubsub.subscriber.dedup;
+
+public enum DeduplicationKey {
+    // Process every delivery, including redeliveries.
+    NONE,
+    // Skip redeliveries of the same Pub/Sub message. Checked before the payload is deserialized.
+    MESSAGE_ID,
+    // Skip messages with the ID of a message that was already processed, e.g. when the same message was published twice.
+    PAYLOAD_ID;
+}
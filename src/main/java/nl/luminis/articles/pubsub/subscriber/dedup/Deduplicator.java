@@ -0,0 +1,44 @@
+package nl.luminis.articles.pubsub.subscriber.dedup;
+
+import com.google.pubsub.v1.PubsubMessage;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.subscriber.MessageIds;
+import nl.luminis.articles.pubsub.subscriber.cache.LongTtlCache;
+
+/**
+ * Remembers the keys of messages that were processed, so that redeliveries can be acked without processing them again. A key is only
+ * remembered once its message was acked: a message that failed and was nacked must be processed when it is redelivered.
+ */
+public class Deduplicator {
+
+    private final DeduplicationKey key;
+    private final LongTtlCache processed;
+
+    public Deduplicator(DeduplicationKey key, int maxEntries, long ttlMillis) {
+        this.key = key;
+        this.processed = new LongTtlCache(maxEntries, ttlMillis);
+    }
+
+    public boolean isDuplicate(PubsubMessage pubsubMessage) {
+        return key == DeduplicationKey.MESSAGE_ID && processed.containsKey(MessageIds.toLong(pubsubMessage.getMessageId()));
+    }
+
+    public boolean isDuplicate(DummyMessage message) {
+        return key == DeduplicationKey.PAYLOAD_ID && processed.containsKey(message.getId());
+    }
+
+    /**
+     * @param message the deserialized payload, or null when it could not be deserialized
+     */
+    public void markProcessed(PubsubMessage pubsubMessage, DummyMessage message) {
+        if (key == DeduplicationKey.MESSAGE_ID) {
+            processed.put(MessageIds.toLong(pubsubMessage.getMessageId()), 1L);
+        } else if (key == DeduplicationKey.PAYLOAD_ID && message != null) {
+            processed.put(message.getId(), 1L);
+        }
+    }
+
+    public long getEvictionCount() {
+        return processed.getEvictionCount();
+    }
+}
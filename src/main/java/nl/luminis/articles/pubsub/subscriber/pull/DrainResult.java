@@ -0,0 +1,14 @@
+package nl.luminis.articles.pubsub.subscriber.pull;
+
+import lombok.Value;
+
+@Value
+public class DrainResult {
+
+    private long received;
+    private long acked;
+    // Nacked messages are redelivered, but not necessarily to this drain, as it stops once pulls come back empty.
+    private long nacked;
+    private long unreadable;
+    private long elapsedMillis;
+}
@@ -0,0 +1,336 @@
+package nl.luminis.articles.pubsub.subscriber.pull;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.rpc.DeadlineExceededException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.stub.GrpcSubscriberStub;
+import com.google.cloud.pubsub.v1.stub.SubscriberStub;
+import com.google.cloud.pubsub.v1.stub.SubscriberStubSettings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.Empty;
+import com.google.pubsub.v1.AcknowledgeRequest;
+import com.google.pubsub.v1.ModifyAckDeadlineRequest;
+import com.google.pubsub.v1.ProjectSubscriptionName;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PullRequest;
+import com.google.pubsub.v1.ReceivedMessage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.auth.CredentialsProviderFactory;
+import nl.luminis.articles.pubsub.auth.TransportChannelProviderFactory;
+import nl.luminis.articles.pubsub.codec.UnreadablePayloadException;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageReader;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import nl.luminis.articles.pubsub.subscriber.SubscriberProperties;
+import nl.luminis.articles.pubsub.subscriber.batch.BatchHandler;
+import nl.luminis.articles.pubsub.subscriber.retry.RetryHandler;
+import org.springframework.stereotype.Service;
+import org.threeten.bp.Duration;
+
+/**
+ * Drains the backlog of a subscription with unary pull and acknowledge calls instead of a streaming pull {@code Subscriber}, for batch and
+ * backfill jobs. Several pullers each pull up to gcloud.pubsub.subscription.pull.max-messages messages at a time and hand them to a
+ * {@link BatchHandler} in one go. Their ack IDs are acknowledged in batches of pull.ack-batch-size, while the next pull is already in
+ * progress. A puller stops after pull.max-empty-pulls pulls in a row returned nothing, and the drain finishes when all pullers stopped.
+ *
+ * <p>Failures are handled like the streaming subscriber does. Messages of a failed batch, or that could not be read, are nacked after a
+ * backoff and dead-lettered after gcloud.pubsub.subscription.retry.max-attempts attempts, so that a message that fails every time does not
+ * keep the drain from running out of messages. Messages with an unreadable payload are dead-lettered right away. Messages that are still
+ * waiting for their backoff when the drain finishes are nacked at once.
+ */
+@Slf4j
+@Service
+public class PullDrainer {
+
+    private static final long REPLY_TIMEOUT_SECONDS = 30L;
+
+    private final PubSubConfig pubSubConfig;
+    private final CredentialsProviderFactory credentialsProviderFactory;
+    private final TransportChannelProviderFactory channelProviderFactory;
+    private final PubsubMessageReader pubsubMessageReader;
+    private final PublisherRegistry publisherRegistry;
+    private final PubSubMetrics pubSubMetrics;
+
+    public PullDrainer(PubSubConfig pubSubConfig, CredentialsProviderFactory credentialsProviderFactory,
+        TransportChannelProviderFactory channelProviderFactory, PubsubMessageReader pubsubMessageReader, PublisherRegistry publisherRegistry,
+        PubSubMetrics pubSubMetrics) {
+        this.pubSubConfig = pubSubConfig;
+        this.credentialsProviderFactory = credentialsProviderFactory;
+        this.channelProviderFactory = channelProviderFactory;
+        this.pubsubMessageReader = pubsubMessageReader;
+        this.publisherRegistry = publisherRegistry;
+        this.pubSubMetrics = pubSubMetrics;
+    }
+
+    /**
+     * Blocks until the subscription is drained. Messages are acked when the handler returns normally and nacked when it throws.
+     *
+     * @throws IllegalStateException when a pull fails for another reason than its deadline passing
+     */
+    public DrainResult drain(String subscription, BatchHandler<List<DummyMessage>> handler) throws IOException, InterruptedException {
+        ProjectSubscriptionName subscriptionName = pubSubConfig.getProjectSubscriptionName(subscription);
+        SubscriberProperties properties = pubSubConfig.getSubscriberProperties(subscription);
+        log.info("Draining subscription {} with {} pullers", subscriptionName, properties.getPullConcurrency());
+
+        long startNanos = System.nanoTime();
+        Counters counters = new Counters();
+        ProjectTopicName deadLetterTopic = properties.getDeadLetterTopic().isEmpty()
+            ? null
+            : pubSubConfig.getProjectTopicName(properties.getDeadLetterTopic());
+        RetryHandler retryHandler = new RetryHandler(subscription, properties, deadLetterTopic, publisherRegistry,
+            pubSubMetrics.forSubscription(subscription));
+        ExecutorService executor = Executors.newFixedThreadPool(properties.getPullConcurrency(),
+            new ThreadFactoryBuilder().setNameFormat(subscription + "-puller-%d").setDaemon(true).build());
+        try (SubscriberStub stub = createStub(properties)) {
+            List<Future<?>> pullers = new ArrayList<>();
+            for (int i = 0; i < properties.getPullConcurrency(); i++) {
+                Puller puller = new Puller(stub, subscriptionName.toString(), properties, handler, retryHandler, counters);
+                pullers.add(executor.submit(puller::run));
+            }
+            executor.shutdown();
+            for (Future<?> puller : pullers) {
+                puller.get();
+            }
+            // Nacks the messages that are waiting for their backoff. Their replies go through the stub, so it must stay open until they
+            // were sent.
+            retryHandler.close();
+            awaitReplies(counters);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not drain subscription " + subscriptionName, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            retryHandler.close();
+        }
+
+        DrainResult result = new DrainResult(counters.received.sum(), counters.acked.sum(), counters.nacked.sum(),
+            counters.unreadable.sum(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        log.info("Drained subscription {}: {}", subscriptionName, result);
+        return result;
+    }
+
+    private void awaitReplies(Counters counters) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(counters.replies.toArray(new CompletableFuture<?>[0])).get(REPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Not all retried or dead-lettered messages were acked or nacked, they are redelivered once their ack deadline expires", e);
+        }
+    }
+
+    private SubscriberStub createStub(SubscriberProperties properties) throws IOException {
+        SubscriberStubSettings.Builder settings = SubscriberStubSettings
+            .newBuilder()
+            .setCredentialsProvider(credentialsProviderFactory.create())
+            .setTransportChannelProvider(channelProviderFactory.create());
+
+        // A pull on a drained subscription waits for its deadline, which should end it instead of being retried.
+        Duration pullTimeout = Duration.ofSeconds(properties.getPullTimeoutSeconds());
+        settings
+            .pullSettings()
+            .setRetryableCodes(StatusCode.Code.UNAVAILABLE)
+            .setRetrySettings(settings
+                .pullSettings()
+                .getRetrySettings()
+                .toBuilder()
+                .setInitialRpcTimeout(pullTimeout)
+                .setMaxRpcTimeout(pullTimeout)
+                .build());
+
+        return GrpcSubscriberStub.create(settings.build());
+    }
+
+    private static class Counters {
+
+        private final LongAdder received = new LongAdder();
+        private final LongAdder acked = new LongAdder();
+        private final LongAdder nacked = new LongAdder();
+        private final LongAdder unreadable = new LongAdder();
+        // Of the messages that are acked or nacked on their own, by the retry handler.
+        private final List<CompletableFuture<Void>> replies = new CopyOnWriteArrayList<>();
+    }
+
+    private class Puller {
+
+        private final SubscriberStub stub;
+        private final String subscription;
+        private final SubscriberProperties properties;
+        private final BatchHandler<List<DummyMessage>> handler;
+        private final RetryHandler retryHandler;
+        private final Counters counters;
+        private List<String> pendingAcks;
+        private ApiFuture<Empty> inFlightAck;
+        private int inFlightAckCount;
+
+        Puller(SubscriberStub stub, String subscription, SubscriberProperties properties, BatchHandler<List<DummyMessage>> handler,
+            RetryHandler retryHandler, Counters counters) {
+            this.stub = stub;
+            this.subscription = subscription;
+            this.properties = properties;
+            this.handler = handler;
+            this.retryHandler = retryHandler;
+            this.counters = counters;
+            this.pendingAcks = new ArrayList<>(properties.getPullAckBatchSize());
+        }
+
+        void run() {
+            try {
+                int emptyPulls = 0;
+                while (emptyPulls < properties.getPullMaxEmptyPulls() && !Thread.currentThread().isInterrupted()) {
+                    List<ReceivedMessage> received = pull();
+                    if (received.isEmpty()) {
+                        emptyPulls++;
+                        // The next pulls may take until their deadline, which the ack deadline of the handled messages need not outlast.
+                        acknowledge();
+                        continue;
+                    }
+                    emptyPulls = 0;
+                    counters.received.add(received.size());
+                    process(received);
+                    // A short pull means the backlog is running out, so the next pull may well wait for its deadline.
+                    if (pendingAcks.size() >= properties.getPullAckBatchSize() || received.size() < properties.getPullMaxMessages()) {
+                        acknowledge();
+                    }
+                }
+                acknowledge();
+            } finally {
+                awaitAcknowledged();
+            }
+        }
+
+        private List<ReceivedMessage> pull() {
+            PullRequest request = PullRequest.newBuilder().setSubscription(subscription).setMaxMessages(properties.getPullMaxMessages()).build();
+            try {
+                return stub.pullCallable().call(request).getReceivedMessagesList();
+            } catch (DeadlineExceededException e) {
+                return List.of();
+            }
+        }
+
+        private void process(List<ReceivedMessage> received) {
+            List<DummyMessage> messages = new ArrayList<>(received.size());
+            List<ReceivedMessage> readMessages = new ArrayList<>(received.size());
+            for (ReceivedMessage receivedMessage : received) {
+                try {
+                    messages.add(pubsubMessageReader.read(receivedMessage.getMessage(), DummyMessage.class));
+                    readMessages.add(receivedMessage);
+                } catch (UnreadablePayloadException e) {
+                    // Redelivering it would not make the payload readable.
+                    log.error("Unreadable payload in message with ID {}, cannot recover", receivedMessage.getMessage().getMessageId(), e);
+                    counters.unreadable.increment();
+                    retryHandler.deadLetter(receivedMessage.getMessage(), createReplyConsumer(receivedMessage),
+                        "Unreadable payload: " + e.getMessage());
+                } catch (IOException e) {
+                    log.error("Could not read message with ID {}", receivedMessage.getMessage().getMessageId(), e);
+                    retryHandler.retry(receivedMessage.getMessage(), createReplyConsumer(receivedMessage), e.toString());
+                }
+            }
+
+            try {
+                if (!messages.isEmpty()) {
+                    handler.handle(messages);
+                }
+                readMessages.forEach(receivedMessage -> pendingAcks.add(receivedMessage.getAckId()));
+            } catch (Exception e) {
+                log.error("Could not handle batch of {} messages", messages.size(), e);
+                for (ReceivedMessage receivedMessage : readMessages) {
+                    retryHandler.retry(receivedMessage.getMessage(), createReplyConsumer(receivedMessage), e.toString());
+                }
+            }
+        }
+
+        private AckReplyConsumer createReplyConsumer(ReceivedMessage receivedMessage) {
+            AsyncAckReplyConsumer consumer = new AsyncAckReplyConsumer(receivedMessage.getAckId());
+            counters.replies.add(consumer.replied);
+            return consumer;
+        }
+
+        /**
+         * Sends the pending ack IDs without waiting for the response, after the previous acknowledge call has completed. At most one call
+         * per puller is in flight, which overlaps it with the next pull.
+         */
+        private void acknowledge() {
+            awaitAcknowledged();
+            if (pendingAcks.isEmpty()) {
+                return;
+            }
+            inFlightAck = stub.acknowledgeCallable().futureCall(AcknowledgeRequest
+                .newBuilder()
+                .setSubscription(subscription)
+                .addAllAckIds(pendingAcks)
+                .build());
+            inFlightAckCount = pendingAcks.size();
+            pendingAcks = new ArrayList<>(properties.getPullAckBatchSize());
+        }
+
+        /**
+         * Replies to a retried or dead-lettered message on its own, as the retry handler does so after a backoff or once the dead-letter
+         * topic accepted the message, possibly when this puller has already stopped.
+         */
+        private class AsyncAckReplyConsumer implements AckReplyConsumer {
+
+            private final String ackId;
+            private final CompletableFuture<Void> replied = new CompletableFuture<>();
+
+            AsyncAckReplyConsumer(String ackId) {
+                this.ackId = ackId;
+            }
+
+            @Override
+            public void ack() {
+                reply(stub.acknowledgeCallable().futureCall(AcknowledgeRequest
+                    .newBuilder()
+                    .setSubscription(subscription)
+                    .addAckIds(ackId)
+                    .build()), counters.acked);
+            }
+
+            @Override
+            public void nack() {
+                reply(stub.modifyAckDeadlineCallable().futureCall(ModifyAckDeadlineRequest
+                    .newBuilder()
+                    .setSubscription(subscription)
+                    .addAckIds(ackId)
+                    .setAckDeadlineSeconds(0)
+                    .build()), counters.nacked);
+            }
+
+            private void reply(ApiFuture<Empty> future, LongAdder counter) {
+                future.addListener(() -> {
+                    counter.increment();
+                    replied.complete(null);
+                }, Runnable::run);
+            }
+        }
+
+        private void awaitAcknowledged() {
+            if (inFlightAck == null) {
+                return;
+            }
+            try {
+                inFlightAck.get();
+                counters.acked.add(inFlightAckCount);
+            } catch (ExecutionException e) {
+                // The messages are redelivered once their ack deadline expires.
+                log.warn("Could not acknowledge {} messages", inFlightAckCount, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlightAck = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package nl.luminis.articles.pubsub.subscriber.retry;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.mapper.MessageAttributes;
+import nl.luminis.articles.pubsub.metrics.SubscriberMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import nl.luminis.articles.pubsub.subscriber.MessageIds;
+import nl.luminis.articles.pubsub.subscriber.SubscriberProperties;
+import nl.luminis.articles.pubsub.subscriber.cache.LongTtlCache;
+
+/**
+ * Decides what happens to a message that could not be processed. It is nacked after an exponentially growing delay, so that a failing
+ * message is not redelivered right away over and over again. While the nack is delayed, the subscriber keeps extending its ack deadline and
+ * counts it towards flow control, which slows down receiving when many messages fail.
+ *
+ * <p>Once a message has failed the maximum number of times, or when its payload cannot be read at all, it is published to the dead-letter
+ * topic and acked. Without a dead-letter topic, the message keeps being retried at the maximum delay.
+ */
+@Slf4j
+public class RetryHandler implements AutoCloseable {
+
+    private static final long MIN_ATTEMPT_TTL_MILLIS = 10L * 60L * 1000L;
+    // Spread the redeliveries of messages that failed at the same time.
+    private static final double JITTER = 0.2;
+
+    private final String subscription;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double backoffMultiplier;
+    private final ProjectTopicName deadLetterTopic;
+    private final PublisherRegistry publisherRegistry;
+    private final SubscriberMetrics metrics;
+    private final LongTtlCache attempts;
+    private final ScheduledExecutorService scheduler;
+
+    public RetryHandler(String subscription, SubscriberProperties properties, ProjectTopicName deadLetterTopic,
+        PublisherRegistry publisherRegistry, SubscriberMetrics metrics) {
+        this.subscription = subscription;
+        this.maxAttempts = properties.getRetryMaxAttempts();
+        this.initialBackoffMillis = properties.getRetryInitialBackoffMillis();
+        this.maxBackoffMillis = properties.getRetryMaxBackoffMillis();
+        this.backoffMultiplier = properties.getRetryBackoffMultiplier();
+        this.deadLetterTopic = deadLetterTopic;
+        this.publisherRegistry = publisherRegistry;
+        this.metrics = metrics;
+        // Attempts are counted per message ID and forgotten when a message is not redelivered for a while.
+        this.attempts = new LongTtlCache(properties.getRetryMaxTrackedMessages(), Math.max(MIN_ATTEMPT_TTL_MILLIS, 2 * maxBackoffMillis));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat(subscription + "-retry-%d")
+            .setDaemon(true)
+            .build());
+    }
+
+    /**
+     * Nacks the message after a delay, or dead-letters it once it has failed too often.
+     */
+    public void retry(PubsubMessage message, AckReplyConsumer consumer, String failure) {
+        long attempt = attempts.increment(MessageIds.toLong(message.getMessageId()));
+        if (attempt >= maxAttempts && deadLetterTopic != null) {
+            deadLetter(message, consumer, String.format("Failed %d times, last with: %s", attempt, failure), attempt);
+            return;
+        }
+
+        long delayMillis = getBackoffMillis(attempt);
+        log.debug("Message {} failed {} times, it will be redelivered in {} ms", message.getMessageId(), attempt, delayMillis);
+        metrics.recordRetry();
+        try {
+            scheduler.schedule(consumer::nack, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, nothing will be processed anymore anyway.
+            consumer.nack();
+        }
+    }
+
+    /**
+     * Publishes the message to the dead-letter topic and acks it once it was published. Without a dead-letter topic, the message is acked
+     * and lost.
+     */
+    public void deadLetter(PubsubMessage message, AckReplyConsumer consumer, String reason) {
+        deadLetter(message, consumer, reason, attempts.get(MessageIds.toLong(message.getMessageId()), 0L) + 1);
+    }
+
+    public boolean hasDeadLetterTopic() {
+        return deadLetterTopic != null;
+    }
+
+    /**
+     * Nacks all messages that are waiting for their delay, so that they are redelivered right away to another subscriber.
+     */
+    @Override
+    public void close() {
+        List<Runnable> delayedNacks = scheduler.shutdownNow();
+        delayedNacks.forEach(Runnable::run);
+    }
+
+    long getBackoffMillis(long attempt) {
+        double backoff = Math.min(maxBackoffMillis, initialBackoffMillis * Math.pow(backoffMultiplier, attempt - 1));
+        double jitter = 1.0 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.round(Math.min(maxBackoffMillis, backoff * jitter));
+    }
+
+    private void deadLetter(PubsubMessage message, AckReplyConsumer consumer, String reason, long attempt) {
+        if (deadLetterTopic == null) {
+            log.error("Dropping message {} of subscription {}: {}", message.getMessageId(), subscription, reason);
+            consumer.ack();
+            return;
+        }
+
+        // The server assigns a new message ID and publish time. The dead-letter topic need not have message ordering enabled, so the
+        // ordering key is only kept as attribute.
+        PubsubMessage.Builder deadLetter = message
+            .toBuilder()
+            .clearMessageId()
+            .clearPublishTime()
+            .clearOrderingKey()
+            .putAttributes(MessageAttributes.DEAD_LETTER_REASON, reason)
+            .putAttributes(MessageAttributes.DEAD_LETTER_SUBSCRIPTION, subscription)
+            .putAttributes(MessageAttributes.DEAD_LETTER_ATTEMPTS, Long.toString(attempt))
+            .putAttributes(MessageAttributes.ORIGINAL_MESSAGE_ID, message.getMessageId());
+        if (!message.getOrderingKey().isEmpty()) {
+            deadLetter.putAttributes(MessageAttributes.ORIGINAL_ORDERING_KEY, message.getOrderingKey());
+        }
+
+        ApiFuture<String> future;
+        try {
+            future = publisherRegistry.publish(deadLetterTopic, deadLetter.build());
+        } catch (RuntimeException e) {
+            log.warn("Could not dead-letter message {} to {}, it will be redelivered", message.getMessageId(), deadLetterTopic, e);
+            consumer.nack();
+            return;
+        }
+        ApiFutures.addCallback(future, new ApiFutureCallback<String>() {
+            @Override
+            public void onFailure(Throwable t) {
+                log.warn("Could not dead-letter message {} to {}, it will be redelivered", message.getMessageId(), deadLetterTopic, t);
+                consumer.nack();
+            }
+
+            @Override
+            public void onSuccess(String messageId) {
+                log.warn("Dead-lettered message {} to {} as {}: {}", message.getMessageId(), deadLetterTopic, messageId, reason);
+                metrics.recordDeadLetter();
+                attempts.remove(MessageIds.toLong(message.getMessageId()));
+                consumer.ack();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+}
@@ -0,0 +1,86 @@
+package nl.luminis.articles.pubsub.subscriber.routing;
+
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides what happens to a message based on its attributes only, so that messages a subscriber is not interested in are never parsed. The
+ * first matching rule wins; a message that no rule matches is processed.
+ */
+public class MessageRouter {
+
+    private final List<Route> routes;
+
+    /**
+     * @param handlers the available handlers by bean name
+     * @throws IllegalArgumentException when a rule refers to a handler that does not exist
+     */
+    public MessageRouter(List<RoutingRule> rules, Map<String, RoutedMessageHandler> handlers) {
+        this.routes = new ArrayList<>(rules.size());
+        for (RoutingRule rule : rules) {
+            RoutedMessageHandler handler = null;
+            if (rule.getAction() == RoutingAction.HANDLE) {
+                handler = handlers.get(rule.getHandler());
+                if (handler == null) {
+                    throw new IllegalArgumentException(String.format("Routing rule %s refers to unknown handler %s", rule, rule.getHandler()));
+                }
+            }
+            routes.add(new Route(rule.getMatch(), rule.getAction(), handler));
+        }
+    }
+
+    public boolean isEmpty() {
+        return routes.isEmpty();
+    }
+
+    /**
+     * @return the route of the first matching rule, or null when no rule matches
+     */
+    public Route route(PubsubMessage message) {
+        for (Route route : routes) {
+            if (route.matches(message)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    public static class Route {
+
+        // Arrays rather than a map, as the attributes of every message are compared against them.
+        private final String[] attributes;
+        private final String[] values;
+        private final RoutingAction action;
+        private final RoutedMessageHandler handler;
+
+        Route(Map<String, String> match, RoutingAction action, RoutedMessageHandler handler) {
+            this.attributes = match.keySet().toArray(new String[0]);
+            this.values = match.values().toArray(new String[0]);
+            this.action = action;
+            this.handler = handler;
+        }
+
+        public RoutingAction getAction() {
+            return action;
+        }
+
+        /**
+         * @return the handler of the HANDLE action, null for other actions
+         */
+        public RoutedMessageHandler getHandler() {
+            return handler;
+        }
+
+        boolean matches(PubsubMessage message) {
+            for (int i = 0; i < attributes.length; i++) {
+                String value = message.getAttributesOrDefault(attributes[i], null);
+                if (value == null || !(RoutingRule.ANY_VALUE.equals(values[i]) || values[i].equals(value))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
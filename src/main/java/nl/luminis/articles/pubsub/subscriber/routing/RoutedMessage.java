@@ -0,0 +1,48 @@
+package nl.luminis.articles.pubsub.subscriber.routing;
+
+import com.google.pubsub.v1.PubsubMessage;
+import java.io.IOException;
+import java.util.Map;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageReader;
+
+/**
+ * A received message whose payload is read on the first call to {@link #getPayload(Class)}.
+ */
+public class RoutedMessage {
+
+    private final PubsubMessage pubsubMessage;
+    private final PubsubMessageReader reader;
+    private Object payload;
+
+    public RoutedMessage(PubsubMessage pubsubMessage, PubsubMessageReader reader) {
+        this.pubsubMessage = pubsubMessage;
+        this.reader = reader;
+    }
+
+    public String getMessageId() {
+        return pubsubMessage.getMessageId();
+    }
+
+    public String getAttribute(String name) {
+        return pubsubMessage.getAttributesOrDefault(name, null);
+    }
+
+    public Map<String, String> getAttributes() {
+        return pubsubMessage.getAttributesMap();
+    }
+
+    public PubsubMessage getPubsubMessage() {
+        return pubsubMessage;
+    }
+
+    /**
+     * @throws nl.luminis.articles.pubsub.codec.UnreadablePayloadException when the payload cannot be read, which dead-letters the message
+     *     when it is thrown by the handler
+     */
+    public <T> T getPayload(Class<T> type) throws IOException {
+        if (!type.isInstance(payload)) {
+            payload = reader.read(pubsubMessage, type);
+        }
+        return type.cast(payload);
+    }
+}
@@ -0,0 +1,14 @@
+package nl.luminis.articles.pubsub.subscriber.routing;
+
+/**
+ * Processes the messages that a routing rule with the HANDLE action sends to it, by its bean name. The payload is only read when the
+ * handler asks for it.
+ */
+@FunctionalInterface
+public interface RoutedMessageHandler {
+
+    /**
+     * The message is acked when this returns normally and retried when it throws.
+     */
+    void handle(RoutedMessage message) throws Exception;
+}
@@ -0,0 +1,10 @@
+package nl.luminis.articles.pubsub.subscriber.routing;
+
+public enum RoutingAction {
+    // Ack the message without reading its payload.
+    SKIP,
+    // Hand the message to the RoutedMessageHandler bean with the name of the rule's handler.
+    HANDLE,
+    // Read the payload and process it like a message that no rule matched.
+    PROCESS
+}
@@ -0,0 +1,24 @@
+package nl.luminis.articles.pubsub.subscriber.routing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A rule matches a message when every attribute in {@link #getMatch()} has the given value, or any value when it is "*". Rules are bound
+ * from properties like gcloud.pubsub.subscription.routing.rules[0].match.type=audit and ...rules[0].action=SKIP.
+ */
+@Getter
+@Setter
+@ToString
+public class RoutingRule {
+
+    public static final String ANY_VALUE = "*";
+
+    private Map<String, String> match = new LinkedHashMap<>();
+    private RoutingAction action = RoutingAction.PROCESS;
+    // The bean name of the RoutedMessageHandler, only used by the HANDLE action.
+    private String handler;
+}
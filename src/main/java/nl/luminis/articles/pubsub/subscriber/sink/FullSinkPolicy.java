@@ -0,0 +1,10 @@
+package nl.luminis.articles.pubsub.subscriber.sink;
+
+public enum FullSinkPolicy {
+    // Wait until a consumer makes room. This blocks the Pub/Sub executor thread, so flow control stops further messages from being pulled.
+    BLOCK,
+    // Discard the oldest message in the sink to make room for the new one. That message was already acked, so it is lost for good.
+    DROP_OLDEST,
+    // Refuse the message so that Pub/Sub redelivers it later. The default, as it never loses a message.
+    NACK;
+}
@@ -0,0 +1,31 @@
+package nl.luminis.articles.pubsub.subscriber.sink;
+
+import java.util.Collection;
+
+/**
+ * Hands received messages over to downstream consumers. Implementations must be thread-safe, as messages are offered concurrently by the
+ * Pub/Sub executor threads.
+ */
+public interface MessageSink<T> {
+
+    /**
+     * @return false when the sink did not accept the message and it should be redelivered by Pub/Sub
+     */
+    boolean offer(T message);
+
+    /**
+     * @return the oldest message in the sink, or null if the sink is empty
+     */
+    T poll();
+
+    /**
+     * Moves at most maxMessages messages from the sink to the target collection, oldest first.
+     *
+     * @return the number of messages that were moved
+     */
+    int drainTo(Collection<? super T> target, int maxMessages);
+
+    int size();
+
+    void clear();
+}
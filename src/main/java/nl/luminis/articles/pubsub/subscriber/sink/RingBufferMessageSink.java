@@ -0,0 +1,170 @@
+package nl.luminis.articles.pubsub.subscriber.sink;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free multi-producer multi-consumer ring buffer. Every slot carries a sequence number that tells producers and consumers
+ * whether the slot is free to write or ready to read, so neither side needs a lock.
+ */
+public class RingBufferMessageSink<T> implements MessageSink<T> {
+
+    private static final long BLOCK_PARK_NANOS = 50_000L;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final FullSinkPolicy fullSinkPolicy;
+    private final LongAdder dropped;
+    private final LongAdder rejected;
+
+    public RingBufferMessageSink(int capacity, FullSinkPolicy fullSinkPolicy) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30, got " + capacity);
+        }
+        // Round up to a power of two so that the slot of a sequence can be found with a mask instead of a modulo. The sequence scheme needs
+        // at least two slots to tell a full slot apart from a free one.
+        this.capacity = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.fullSinkPolicy = fullSinkPolicy;
+        this.dropped = new LongAdder();
+        this.rejected = new LongAdder();
+    }
+
+    @Override
+    public boolean offer(T message) {
+        if (message == null) {
+            throw new IllegalArgumentException("Cannot offer null to the sink");
+        }
+        switch (fullSinkPolicy) {
+            case BLOCK:
+                return offerBlocking(message);
+            case DROP_OLDEST:
+                return offerDroppingOldest(message);
+            case NACK:
+                return offerOrReject(message);
+            default:
+                throw new IllegalArgumentException("Unexpected full sink policy " + fullSinkPolicy);
+        }
+    }
+
+    @Override
+    public T poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T message = elements.get(index);
+                    elements.lazySet(index, null);
+                    // Mark the slot as writable for the producer that wraps around to it.
+                    sequences.set(index, position + capacity);
+                    return message;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+            // Another consumer claimed this slot first, retry with the new head.
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> target, int maxMessages) {
+        int drained = 0;
+        T message;
+        while (drained < maxMessages && (message = poll()) != null) {
+            target.add(message);
+            drained++;
+        }
+        return drained;
+    }
+
+    @Override
+    public int size() {
+        // Read head first; reading it last could make the size negative when consumers move past a stale tail.
+        long consumed = head.get();
+        long produced = tail.get();
+        return (int) Math.max(0, Math.min(capacity, produced - consumed));
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            // Keep polling until the sink is empty.
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private boolean offerBlocking(T message) {
+        while (!tryOffer(message)) {
+            if (Thread.currentThread().isInterrupted()) {
+                rejected.increment();
+                return false;
+            }
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+        return true;
+    }
+
+    private boolean offerDroppingOldest(T message) {
+        while (!tryOffer(message)) {
+            if (poll() != null) {
+                dropped.increment();
+            }
+        }
+        return true;
+    }
+
+    private boolean offerOrReject(T message) {
+        if (tryOffer(message)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    private boolean tryOffer(T message) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, message);
+                    // Publishing the sequence makes the message visible to consumers.
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            // Another producer claimed this slot first, retry with the new tail.
+        }
+    }
+}
@@ -6,6 +6,8 @@ import org.testcontainers.images.builder.ImageFromDockerfile;
 public class TestContainerFactory {
 
     public static final int PUBSUB_PORT = 8432;
+    public static final String PUBSUB_PROJECT_ID = "my-gcp-project";
+    public static final String PUBSUB_CONFIG = "[{\"name\": \"my-topic\", \"subscriptions\": [\"my-subscription\"]}]";
 
     public static GenericContainer createPubSubContainer() {
         return new GenericContainer(new ImageFromDockerfile()
@@ -13,8 +15,8 @@ public class TestContainerFactory {
             .withFileFromClasspath("start-pubsub.sh", "docker/start-pubsub.sh")
             .withFileFromClasspath("pubsub-client.py", "docker/pubsub-client.py"))
             .withExposedPorts(PUBSUB_PORT)
-            .withEnv("PUBSUB_PROJECT_ID", "my-gcp-project")
-            .withEnv("PUBSUB_CONFIG", "[{\"name\": \"my-topic\", \"subscriptions\": [\"my-subscription\"]}]");
+            .withEnv("PUBSUB_PROJECT_ID", PUBSUB_PROJECT_ID)
+            .withEnv("PUBSUB_CONFIG", PUBSUB_CONFIG);
     }
 
     // Convenience method to start a Pub/Sub container outside of integration tests.
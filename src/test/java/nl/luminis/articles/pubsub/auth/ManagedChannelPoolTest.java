@@ -0,0 +1,53 @@
+package nl.luminis.articles.pubsub.auth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.pubsub.v1.PublisherGrpc;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import java.util.List;
+import org.junit.Test;
+
+public class ManagedChannelPoolTest {
+
+    @Test
+    public void testCallsAreSpreadRoundRobin() {
+        ManagedChannel first = mock(ManagedChannel.class);
+        ManagedChannel second = mock(ManagedChannel.class);
+        ManagedChannelPool pool = new ManagedChannelPool(List.of(first, second));
+
+        for (int i = 0; i < 4; i++) {
+            pool.newCall(PublisherGrpc.getPublishMethod(), CallOptions.DEFAULT);
+        }
+
+        verify(first, times(2)).newCall(any(), any());
+        verify(second, times(2)).newCall(any(), any());
+    }
+
+    @Test
+    public void testShutdownClosesAllChannels() {
+        ManagedChannel first = mock(ManagedChannel.class);
+        ManagedChannel second = mock(ManagedChannel.class);
+        when(first.isShutdown()).thenReturn(true);
+        ManagedChannelPool pool = new ManagedChannelPool(List.of(first, second));
+
+        pool.shutdown();
+
+        verify(first).shutdown();
+        verify(second).shutdown();
+        assertThat(pool.isShutdown()).isFalse();
+        when(second.isShutdown()).thenReturn(true);
+        assertThat(pool.isShutdown()).isTrue();
+    }
+
+    @Test
+    public void testPoolNeedsChannels() {
+        assertThatThrownBy(() -> new ManagedChannelPool(List.of())).isInstanceOf(IllegalArgumentException.class);
+    }
+}
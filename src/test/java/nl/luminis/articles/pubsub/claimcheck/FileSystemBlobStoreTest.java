@@ -0,0 +1,59 @@
+package nl.luminis.articles.pubsub.claimcheck;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSystemBlobStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemBlobStore blobStore;
+
+    @Before
+    public void setUp() throws IOException {
+        blobStore = new FileSystemBlobStore(folder.getRoot().toPath().resolve("blobs"));
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        byte[] data = "header-payload".getBytes(StandardCharsets.UTF_8);
+
+        String reference = blobStore.put(data, 7, 7);
+
+        assertThat(toString(blobStore.get(reference))).isEqualTo("payload");
+        assertThat(blobStore.put(data, 0, data.length)).isNotEqualTo(reference);
+    }
+
+    @Test
+    public void testBlobIsGoneAfterDelete() throws IOException {
+        String reference = blobStore.put(new byte[] {1, 2, 3}, 0, 3);
+        ByteBuffer mapped = blobStore.get(reference);
+
+        blobStore.delete(reference);
+        blobStore.delete(reference);
+
+        assertThat(blobStore.get(reference)).isNull();
+        // A buffer that was mapped before stays readable.
+        assertThat(mapped.get(2)).isEqualTo((byte) 3);
+    }
+
+    @Test
+    public void testReferenceOutsideDirectoryIsRefused() {
+        assertThatThrownBy(() -> blobStore.get("../secret")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String toString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,101 @@
+package nl.luminis.articles.pubsub.fake;
+
+import com.google.protobuf.Timestamp;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.Subscription;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the topics, subscriptions and messages of the fake Pub/Sub server. Messages only live in memory and are removed once acknowledged.
+ */
+class FakeBroker {
+
+    static final int DEFAULT_ACK_DEADLINE_SECONDS = 10;
+
+    private final Map<String, Set<String>> topics;
+    private final Map<String, FakeSubscription> subscriptions;
+    private final AtomicLong messageIds;
+
+    FakeBroker() {
+        this.topics = new ConcurrentHashMap<>();
+        this.subscriptions = new ConcurrentHashMap<>();
+        this.messageIds = new AtomicLong();
+    }
+
+    boolean createTopic(String topic) {
+        return topics.putIfAbsent(topic, ConcurrentHashMap.newKeySet()) == null;
+    }
+
+    boolean hasTopic(String topic) {
+        return topics.containsKey(topic);
+    }
+
+    boolean deleteTopic(String topic) {
+        return topics.remove(topic) != null;
+    }
+
+    /**
+     * @return the created subscription, or null if a subscription with the same name already exists
+     */
+    Subscription createSubscription(Subscription subscription) {
+        Subscription created = subscription.getAckDeadlineSeconds() > 0
+            ? subscription
+            : subscription.toBuilder().setAckDeadlineSeconds(DEFAULT_ACK_DEADLINE_SECONDS).build();
+        if (subscriptions.putIfAbsent(created.getName(), new FakeSubscription(created)) != null) {
+            return null;
+        }
+        Set<String> topicSubscriptions = topics.get(created.getTopic());
+        if (topicSubscriptions != null) {
+            topicSubscriptions.add(created.getName());
+        }
+        return created;
+    }
+
+    FakeSubscription getSubscription(String subscription) {
+        return subscriptions.get(subscription);
+    }
+
+    boolean deleteSubscription(String subscription) {
+        FakeSubscription removed = subscriptions.remove(subscription);
+        if (removed == null) {
+            return false;
+        }
+        Set<String> topicSubscriptions = topics.get(removed.getSubscription().getTopic());
+        if (topicSubscriptions != null) {
+            topicSubscriptions.remove(subscription);
+        }
+        removed.close();
+        return true;
+    }
+
+    List<String> publish(String topic, List<PubsubMessage> messages) {
+        Instant now = Instant.now();
+        Timestamp publishTime = Timestamp.newBuilder().setSeconds(now.getEpochSecond()).setNanos(now.getNano()).build();
+
+        List<String> ids = new ArrayList<>(messages.size());
+        List<PubsubMessage> published = new ArrayList<>(messages.size());
+        for (PubsubMessage message : messages) {
+            String id = Long.toString(messageIds.incrementAndGet());
+            ids.add(id);
+            published.add(message.toBuilder().setMessageId(id).setPublishTime(publishTime).build());
+        }
+
+        for (String subscription : topics.getOrDefault(topic, Set.of())) {
+            FakeSubscription fakeSubscription = subscriptions.get(subscription);
+            if (fakeSubscription != null) {
+                fakeSubscription.enqueue(published);
+            }
+        }
+        return ids;
+    }
+
+    void expireLeases() {
+        subscriptions.values().forEach(FakeSubscription::expireLeases);
+    }
+}
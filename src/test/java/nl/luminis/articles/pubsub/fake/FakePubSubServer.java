@@ -0,0 +1,121 @@
+package nl.luminis.articles.pubsub.fake;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.pubsub.v1.ProjectSubscriptionName;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.Subscription;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.auth.TransportChannelProviderFactory;
+
+/**
+ * In-JVM implementation of the Pub/Sub Publisher and Subscriber gRPC services. It supports publishing, streaming and unary pull,
+ * acknowledging, modifying ack deadlines and seeking to a time. Point the application at it by setting gcloud.pubsub.url to
+ * {@link #getUrl()}.
+ */
+@Slf4j
+public class FakePubSubServer implements AutoCloseable {
+
+    private static final long LEASE_EXPIRY_INTERVAL_MILLIS = 100L;
+
+    private final String serverName;
+    private final FakeBroker broker;
+    private final Server server;
+    private final ScheduledExecutorService scheduler;
+
+    private FakePubSubServer(String serverName, FakeBroker broker, Server server, ScheduledExecutorService scheduler) {
+        this.serverName = serverName;
+        this.broker = broker;
+        this.server = server;
+        this.scheduler = scheduler;
+    }
+
+    public static FakePubSubServer start(String serverName) {
+        FakeBroker broker = new FakeBroker();
+        try {
+            Server server = InProcessServerBuilder
+                .forName(serverName)
+                .addService(new FakePublisherService(broker))
+                .addService(new FakeSubscriberService(broker))
+                .build()
+                .start();
+
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("fake-pubsub-" + serverName + "-%d").build());
+            scheduler.scheduleAtFixedRate(broker::expireLeases, LEASE_EXPIRY_INTERVAL_MILLIS, LEASE_EXPIRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+            log.info("Started fake Pub/Sub server {}", serverName);
+            return new FakePubSubServer(serverName, broker, server, scheduler);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to start fake Pub/Sub server %s", serverName), e);
+        }
+    }
+
+    /**
+     * Starts the server and creates topics and subscriptions from the same JSON format that start-pubsub.sh accepts in PUBSUB_CONFIG, e.g.
+     * [{"name": "my-topic", "subscriptions": ["my-subscription"]}]
+     */
+    public static FakePubSubServer start(String serverName, String projectId, String config) {
+        FakePubSubServer server = start(serverName);
+        server.createTopics(projectId, config);
+        return server;
+    }
+
+    public String getUrl() {
+        return TransportChannelProviderFactory.IN_PROCESS_PREFIX + serverName;
+    }
+
+    public void createTopics(String projectId, String config) {
+        try {
+            List<TopicConfig> topics = new ObjectMapper().readValue(config, new TypeReference<List<TopicConfig>>() {});
+            for (TopicConfig topic : topics) {
+                String topicName = ProjectTopicName.format(projectId, topic.getName());
+                broker.createTopic(topicName);
+                for (String subscription : topic.getSubscriptions()) {
+                    broker.createSubscription(Subscription
+                        .newBuilder()
+                        .setName(ProjectSubscriptionName.format(projectId, subscription))
+                        .setTopic(topicName)
+                        .build());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid Pub/Sub config " + config, e);
+        }
+    }
+
+    /**
+     * Publishes directly on the broker, without going through a client.
+     *
+     * @return the assigned message IDs
+     */
+    public List<String> publish(ProjectTopicName topic, List<PubsubMessage> messages) {
+        return broker.publish(topic.toString(), messages);
+    }
+
+    @Override
+    public void close() {
+        server.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Getter
+    @Setter
+    private static class TopicConfig {
+
+        private String name;
+        private List<String> subscriptions = List.of();
+    }
+}
@@ -0,0 +1,64 @@
+package nl.luminis.articles.pubsub.fake;
+
+import com.google.protobuf.Empty;
+import com.google.pubsub.v1.DeleteTopicRequest;
+import com.google.pubsub.v1.GetTopicRequest;
+import com.google.pubsub.v1.PublishRequest;
+import com.google.pubsub.v1.PublishResponse;
+import com.google.pubsub.v1.PublisherGrpc;
+import com.google.pubsub.v1.Topic;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+class FakePublisherService extends PublisherGrpc.PublisherImplBase {
+
+    private final FakeBroker broker;
+
+    FakePublisherService(FakeBroker broker) {
+        this.broker = broker;
+    }
+
+    @Override
+    public void createTopic(Topic request, StreamObserver<Topic> responseObserver) {
+        if (!broker.createTopic(request.getName())) {
+            responseObserver.onError(Status.ALREADY_EXISTS.withDescription("Topic already exists: " + request.getName()).asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(request);
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getTopic(GetTopicRequest request, StreamObserver<Topic> responseObserver) {
+        if (!broker.hasTopic(request.getTopic())) {
+            responseObserver.onError(topicNotFound(request.getTopic()));
+            return;
+        }
+        responseObserver.onNext(Topic.newBuilder().setName(request.getTopic()).build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void deleteTopic(DeleteTopicRequest request, StreamObserver<Empty> responseObserver) {
+        if (!broker.deleteTopic(request.getTopic())) {
+            responseObserver.onError(topicNotFound(request.getTopic()));
+            return;
+        }
+        responseObserver.onNext(Empty.getDefaultInstance());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void publish(PublishRequest request, StreamObserver<PublishResponse> responseObserver) {
+        if (!broker.hasTopic(request.getTopic())) {
+            responseObserver.onError(topicNotFound(request.getTopic()));
+            return;
+        }
+        responseObserver.onNext(PublishResponse.newBuilder().addAllMessageIds(broker.publish(request.getTopic(), request.getMessagesList())).build());
+        responseObserver.onCompleted();
+    }
+
+    private static RuntimeException topicNotFound(String topic) {
+        return Status.NOT_FOUND.withDescription("Topic not found: " + topic).asRuntimeException();
+    }
+}
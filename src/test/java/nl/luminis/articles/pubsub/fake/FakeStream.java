@@ -0,0 +1,51 @@
+package nl.luminis.articles.pubsub.fake;
+
+import com.google.pubsub.v1.StreamingPullResponse;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * A streaming pull connection of a subscriber. gRPC stream observers are not thread-safe, so all calls are serialized.
+ */
+class FakeStream {
+
+    private final StreamObserver<StreamingPullResponse> observer;
+    private final int ackDeadlineSeconds;
+    private boolean closed;
+
+    FakeStream(StreamObserver<StreamingPullResponse> observer, int ackDeadlineSeconds) {
+        this.observer = observer;
+        this.ackDeadlineSeconds = ackDeadlineSeconds;
+    }
+
+    int getAckDeadlineSeconds() {
+        return ackDeadlineSeconds;
+    }
+
+    /**
+     * @return false when the stream is closed; the messages are redelivered once their ack deadline expires
+     */
+    synchronized boolean send(StreamingPullResponse response) {
+        if (closed) {
+            return false;
+        }
+        try {
+            observer.onNext(response);
+            return true;
+        } catch (RuntimeException e) {
+            // The subscriber cancelled the stream in the meantime.
+            closed = true;
+            return false;
+        }
+    }
+
+    synchronized void complete() {
+        if (!closed) {
+            closed = true;
+            observer.onCompleted();
+        }
+    }
+
+    synchronized void markClosed() {
+        closed = true;
+    }
+}
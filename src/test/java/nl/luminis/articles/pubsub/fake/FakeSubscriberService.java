@@ -0,0 +1,170 @@
+package nl.luminis.articles.pubsub.fake;
+
+import com.google.protobuf.Empty;
+import com.google.pubsub.v1.AcknowledgeRequest;
+import com.google.pubsub.v1.DeleteSubscriptionRequest;
+import com.google.pubsub.v1.GetSubscriptionRequest;
+import com.google.pubsub.v1.ModifyAckDeadlineRequest;
+import com.google.pubsub.v1.PullRequest;
+import com.google.pubsub.v1.PullResponse;
+import com.google.pubsub.v1.SeekRequest;
+import com.google.pubsub.v1.SeekResponse;
+import com.google.pubsub.v1.StreamingPullRequest;
+import com.google.pubsub.v1.StreamingPullResponse;
+import com.google.pubsub.v1.Subscription;
+import com.google.pubsub.v1.SubscriberGrpc;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.util.List;
+
+class FakeSubscriberService extends SubscriberGrpc.SubscriberImplBase {
+
+    private final FakeBroker broker;
+
+    FakeSubscriberService(FakeBroker broker) {
+        this.broker = broker;
+    }
+
+    @Override
+    public void createSubscription(Subscription request, StreamObserver<Subscription> responseObserver) {
+        if (!broker.hasTopic(request.getTopic())) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription("Topic not found: " + request.getTopic()).asRuntimeException());
+            return;
+        }
+        Subscription subscription = broker.createSubscription(request);
+        if (subscription == null) {
+            responseObserver.onError(Status.ALREADY_EXISTS.withDescription("Subscription already exists: " + request.getName()).asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(subscription);
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getSubscription(GetSubscriptionRequest request, StreamObserver<Subscription> responseObserver) {
+        FakeSubscription subscription = broker.getSubscription(request.getSubscription());
+        if (subscription == null) {
+            responseObserver.onError(subscriptionNotFound(request.getSubscription()));
+            return;
+        }
+        responseObserver.onNext(subscription.getSubscription());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void deleteSubscription(DeleteSubscriptionRequest request, StreamObserver<Empty> responseObserver) {
+        if (!broker.deleteSubscription(request.getSubscription())) {
+            responseObserver.onError(subscriptionNotFound(request.getSubscription()));
+            return;
+        }
+        respondEmpty(responseObserver);
+    }
+
+    @Override
+    public void pull(PullRequest request, StreamObserver<PullResponse> responseObserver) {
+        FakeSubscription subscription = broker.getSubscription(request.getSubscription());
+        if (subscription == null) {
+            responseObserver.onError(subscriptionNotFound(request.getSubscription()));
+            return;
+        }
+        responseObserver.onNext(PullResponse.newBuilder().addAllReceivedMessages(subscription.pull(request.getMaxMessages())).build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void acknowledge(AcknowledgeRequest request, StreamObserver<Empty> responseObserver) {
+        FakeSubscription subscription = broker.getSubscription(request.getSubscription());
+        if (subscription == null) {
+            responseObserver.onError(subscriptionNotFound(request.getSubscription()));
+            return;
+        }
+        subscription.acknowledge(request.getAckIdsList());
+        respondEmpty(responseObserver);
+    }
+
+    @Override
+    public void modifyAckDeadline(ModifyAckDeadlineRequest request, StreamObserver<Empty> responseObserver) {
+        FakeSubscription subscription = broker.getSubscription(request.getSubscription());
+        if (subscription == null) {
+            responseObserver.onError(subscriptionNotFound(request.getSubscription()));
+            return;
+        }
+        subscription.modifyAckDeadline(request.getAckIdsList(), request.getAckDeadlineSeconds());
+        respondEmpty(responseObserver);
+    }
+
+    @Override
+    public void seek(SeekRequest request, StreamObserver<SeekResponse> responseObserver) {
+        FakeSubscription subscription = broker.getSubscription(request.getSubscription());
+        if (subscription == null) {
+            responseObserver.onError(subscriptionNotFound(request.getSubscription()));
+            return;
+        }
+        if (!request.hasTime()) {
+            responseObserver.onError(Status.UNIMPLEMENTED.withDescription("Seeking to a snapshot is not supported").asRuntimeException());
+            return;
+        }
+        subscription.seek(request.getTime());
+        responseObserver.onNext(SeekResponse.getDefaultInstance());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public StreamObserver<StreamingPullRequest> streamingPull(StreamObserver<StreamingPullResponse> responseObserver) {
+        return new StreamObserver<StreamingPullRequest>() {
+
+            private FakeSubscription subscription;
+            private FakeStream stream;
+            private boolean failed;
+
+            @Override
+            public void onNext(StreamingPullRequest request) {
+                if (failed) {
+                    return;
+                }
+                // The subscription is only set on the first request of a stream.
+                if (stream == null) {
+                    subscription = broker.getSubscription(request.getSubscription());
+                    if (subscription == null) {
+                        failed = true;
+                        responseObserver.onError(subscriptionNotFound(request.getSubscription()));
+                        return;
+                    }
+                    stream = new FakeStream(responseObserver, request.getStreamAckDeadlineSeconds());
+                    subscription.addStream(stream);
+                }
+
+                subscription.acknowledge(request.getAckIdsList());
+                List<String> modifyAckIds = request.getModifyDeadlineAckIdsList();
+                for (int i = 0; i < modifyAckIds.size(); i++) {
+                    subscription.modifyAckDeadline(List.of(modifyAckIds.get(i)), request.getModifyDeadlineSeconds(i));
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (stream != null) {
+                    stream.markClosed();
+                    subscription.removeStream(stream);
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                if (stream != null) {
+                    subscription.removeStream(stream);
+                    stream.complete();
+                }
+            }
+        };
+    }
+
+    private static void respondEmpty(StreamObserver<Empty> responseObserver) {
+        responseObserver.onNext(Empty.getDefaultInstance());
+        responseObserver.onCompleted();
+    }
+
+    private static RuntimeException subscriptionNotFound(String subscription) {
+        return Status.NOT_FOUND.withDescription("Subscription not found: " + subscription).asRuntimeException();
+    }
+}
@@ -0,0 +1,180 @@
+package nl.luminis.articles.pubsub.fake;
+
+import com.google.protobuf.Timestamp;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.ReceivedMessage;
+import com.google.pubsub.v1.StreamingPullResponse;
+import com.google.pubsub.v1.Subscription;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the messages of a subscription to its streaming pull connections (round robin) or to unary pull requests. A delivered message
+ * is leased until it is acknowledged, or put back in the queue when its ack deadline expires or it is nacked.
+ */
+class FakeSubscription {
+
+    private static final int MAX_MESSAGES_PER_RESPONSE = 1000;
+
+    private final Subscription subscription;
+    private final Deque<PubsubMessage> pending;
+    private final Map<String, Lease> leases;
+    private final List<FakeStream> streams;
+    private final AtomicLong ackIds;
+    private int nextStream;
+
+    FakeSubscription(Subscription subscription) {
+        this.subscription = subscription;
+        this.pending = new ArrayDeque<>();
+        this.leases = new HashMap<>();
+        this.streams = new ArrayList<>();
+        this.ackIds = new AtomicLong();
+    }
+
+    Subscription getSubscription() {
+        return subscription;
+    }
+
+    void enqueue(List<PubsubMessage> messages) {
+        synchronized (this) {
+            pending.addAll(messages);
+        }
+        dispatch();
+    }
+
+    void addStream(FakeStream stream) {
+        synchronized (this) {
+            streams.add(stream);
+        }
+        dispatch();
+    }
+
+    synchronized void removeStream(FakeStream stream) {
+        streams.remove(stream);
+    }
+
+    synchronized List<ReceivedMessage> pull(int maxMessages) {
+        List<ReceivedMessage> messages = new ArrayList<>();
+        while (messages.size() < maxMessages && !pending.isEmpty()) {
+            messages.add(lease(pending.poll(), subscription.getAckDeadlineSeconds()));
+        }
+        return messages;
+    }
+
+    synchronized void acknowledge(List<String> ackIdsToAcknowledge) {
+        ackIdsToAcknowledge.forEach(leases::remove);
+    }
+
+    void modifyAckDeadline(List<String> ackIdsToModify, int ackDeadlineSeconds) {
+        boolean requeued = false;
+        synchronized (this) {
+            for (String ackId : ackIdsToModify) {
+                Lease lease = leases.get(ackId);
+                if (lease == null) {
+                    continue;
+                }
+                if (ackDeadlineSeconds == 0) {
+                    // A deadline of zero is how subscribers nack a message.
+                    leases.remove(ackId);
+                    pending.addFirst(lease.message);
+                    requeued = true;
+                } else {
+                    lease.deadlineNanos = deadline(ackDeadlineSeconds);
+                }
+            }
+        }
+        if (requeued) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Without message retention, seeking to a time can only drop the messages that were published before it.
+     */
+    synchronized void seek(Timestamp time) {
+        pending.removeIf(message -> isBefore(message.getPublishTime(), time));
+        leases.values().removeIf(lease -> isBefore(lease.message.getPublishTime(), time));
+    }
+
+    void expireLeases() {
+        boolean requeued = false;
+        synchronized (this) {
+            long now = System.nanoTime();
+            Iterator<Lease> iterator = leases.values().iterator();
+            while (iterator.hasNext()) {
+                Lease lease = iterator.next();
+                if (lease.deadlineNanos - now < 0) {
+                    iterator.remove();
+                    pending.addLast(lease.message);
+                    requeued = true;
+                }
+            }
+        }
+        if (requeued) {
+            dispatch();
+        }
+    }
+
+    void close() {
+        List<FakeStream> closing;
+        synchronized (this) {
+            closing = new ArrayList<>(streams);
+            streams.clear();
+            pending.clear();
+            leases.clear();
+        }
+        closing.forEach(FakeStream::complete);
+    }
+
+    private void dispatch() {
+        while (true) {
+            FakeStream stream;
+            StreamingPullResponse.Builder response = StreamingPullResponse.newBuilder();
+            synchronized (this) {
+                if (pending.isEmpty() || streams.isEmpty()) {
+                    return;
+                }
+                stream = streams.get(Math.floorMod(nextStream++, streams.size()));
+                while (response.getReceivedMessagesCount() < MAX_MESSAGES_PER_RESPONSE && !pending.isEmpty()) {
+                    response.addReceivedMessages(lease(pending.poll(), stream.getAckDeadlineSeconds()));
+                }
+            }
+            // Send outside of the lock, so that acknowledgements from other streams are not blocked by a slow subscriber.
+            if (!stream.send(response.build())) {
+                removeStream(stream);
+            }
+        }
+    }
+
+    private ReceivedMessage lease(PubsubMessage message, int ackDeadlineSeconds) {
+        String ackId = subscription.getName() + "-" + ackIds.incrementAndGet();
+        leases.put(ackId, new Lease(message, deadline(ackDeadlineSeconds)));
+        return ReceivedMessage.newBuilder().setAckId(ackId).setMessage(message).build();
+    }
+
+    private static long deadline(int ackDeadlineSeconds) {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(ackDeadlineSeconds > 0 ? ackDeadlineSeconds : FakeBroker.DEFAULT_ACK_DEADLINE_SECONDS);
+    }
+
+    private static boolean isBefore(Timestamp timestamp, Timestamp other) {
+        return timestamp.getSeconds() < other.getSeconds() || (timestamp.getSeconds() == other.getSeconds() && timestamp.getNanos() < other.getNanos());
+    }
+
+    private static class Lease {
+
+        private final PubsubMessage message;
+        private long deadlineNanos;
+
+        Lease(PubsubMessage message, long deadlineNanos) {
+            this.message = message;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package nl.luminis.articles.pubsub.load;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.subscriber.sink.MessageSink;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Records the latency between creating and receiving every message instead of keeping it. The subscriber acknowledges a message right
+ * after offering it to the sink, so this is the publish-to-ack latency.
+ */
+class LatencyRecordingSink implements MessageSink<DummyMessage> {
+
+    private final Recorder recorder;
+    private final LongAdder received;
+
+    LatencyRecordingSink() {
+        this.recorder = new Recorder(3);
+        this.received = new LongAdder();
+    }
+
+    @Override
+    public boolean offer(DummyMessage message) {
+        recorder.recordValue(Math.max(0L, LoadClock.nowMicros() - message.getTimestamp()));
+        received.increment();
+        return true;
+    }
+
+    @Override
+    public DummyMessage poll() {
+        return null;
+    }
+
+    @Override
+    public int drainTo(Collection<? super DummyMessage> target, int maxMessages) {
+        return 0;
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public void clear() {
+        // Messages are not kept, so there is nothing to clear.
+    }
+
+    long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * @return the latencies in microseconds recorded since the previous call
+     */
+    Histogram getIntervalHistogram() {
+        return recorder.getIntervalHistogram();
+    }
+}
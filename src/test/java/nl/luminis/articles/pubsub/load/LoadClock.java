@@ -0,0 +1,14 @@
+package nl.luminis.articles.pubsub.load;
+
+import java.time.Instant;
+
+final class LoadClock {
+
+    private LoadClock() {
+    }
+
+    static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000L;
+    }
+}
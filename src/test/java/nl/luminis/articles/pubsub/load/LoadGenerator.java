@@ -0,0 +1,168 @@
+package nl.luminis.articles.pubsub.load;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.Application;
+import nl.luminis.articles.pubsub.TestContainerFactory;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.fake.FakePubSubServer;
+import nl.luminis.articles.pubsub.publisher.DummyMessagePublisher;
+import nl.luminis.articles.pubsub.publisher.PublishRejectedException;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Publishes messages through {@link DummyMessagePublisher} and reports the latency until {@link
+ * nl.luminis.articles.pubsub.subscriber.DummyMessageSubscriber} acknowledges them, together with the throughput. Runs against the
+ * in-process fake Pub/Sub server, unless gcloud.pubsub.url points at an emulator.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nl.luminis.articles.pubsub.load.LoadGenerator \
+ *     -Dload.mode=FIXED_RATE -Dload.rate=10000 -Dload.duration-seconds=60
+ * </pre>
+ */
+@Slf4j
+public class LoadGenerator {
+
+    private static final long DRAIN_TIMEOUT_MILLIS = 30_000L;
+
+    private final LoadMode mode;
+    private final int rate;
+    private final long warmupSeconds;
+    private final long durationSeconds;
+    private final int payloadSize;
+    private final String histogramFile;
+    private final LongAdder sent;
+    private final LongAdder rejected;
+
+    public LoadGenerator() {
+        this.mode = LoadMode.valueOf(System.getProperty("load.mode", LoadMode.FIXED_RATE.name()));
+        this.rate = Integer.getInteger("load.rate", 1000);
+        this.warmupSeconds = Long.getLong("load.warmup-seconds", 10L);
+        this.durationSeconds = Long.getLong("load.duration-seconds", 60L);
+        this.payloadSize = Integer.getInteger("load.payload-size", 1024);
+        this.histogramFile = System.getProperty("load.histogram-file", "target/load.hlog");
+        this.sent = new LongAdder();
+        this.rejected = new LongAdder();
+    }
+
+    public static void main(String[] args) throws FileNotFoundException {
+        String url = System.getProperty("gcloud.pubsub.url");
+        FakePubSubServer server = null;
+        if (url == null) {
+            server = FakePubSubServer.start("load-generator", TestContainerFactory.PUBSUB_PROJECT_ID, TestContainerFactory.PUBSUB_CONFIG);
+            url = server.getUrl();
+        }
+
+        // System properties override application.properties, default properties of the builder would not.
+        System.setProperty("gcloud.pubsub.url", url);
+        // Logging every message would dominate the measurement.
+        System.setProperty("logging.level.nl.luminis.articles.pubsub.publisher.DummyMessagePublisher", "INFO");
+        System.setProperty("logging.level.nl.luminis.articles.pubsub.subscriber.DummyMessageSubscriber", "INFO");
+
+        LatencyRecordingSink sink = new LatencyRecordingSink();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+            .web(WebApplicationType.NONE)
+            .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("latencyRecordingSink", sink))
+            .run()) {
+            new LoadGenerator().run(context.getBean(DummyMessagePublisher.class), sink);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    public void run(DummyMessagePublisher publisher, LatencyRecordingSink sink) throws FileNotFoundException {
+        log.info("Warming up for {} seconds in {} mode at {} messages per second", warmupSeconds, mode, rate);
+        long receivedBeforeWarmup = sink.getReceived();
+        generate(publisher, TimeUnit.SECONDS.toNanos(warmupSeconds));
+        awaitReceived(sink, receivedBeforeWarmup);
+        sink.getIntervalHistogram();
+        sent.reset();
+        rejected.reset();
+        long receivedBefore = sink.getReceived();
+
+        log.info("Measuring for {} seconds", durationSeconds);
+        long start = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        generate(publisher, TimeUnit.SECONDS.toNanos(durationSeconds));
+        awaitReceived(sink, receivedBefore);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Histogram histogram = sink.getIntervalHistogram();
+        histogram.setStartTimeStamp(startMillis);
+        histogram.setEndTimeStamp(System.currentTimeMillis());
+        report(histogram, sink.getReceived() - receivedBefore, elapsedSeconds);
+    }
+
+    private void generate(DummyMessagePublisher publisher, long durationNanos) {
+        long intervalNanos = mode == LoadMode.FIXED_RATE ? TimeUnit.SECONDS.toNanos(1) / rate : 0L;
+        String payload = "x".repeat(payloadSize);
+        long startNanos = System.nanoTime();
+        long startMicros = LoadClock.nowMicros();
+        long id = 0;
+
+        for (long intended = startNanos; intended - startNanos < durationNanos; intended += intervalNanos) {
+            long timestamp;
+            if (mode == LoadMode.FIXED_RATE) {
+                long delay;
+                while ((delay = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                timestamp = startMicros + (intended - startNanos) / 1_000L;
+            } else {
+                // Without a schedule the loop condition needs the actual time to end the run.
+                intended = System.nanoTime();
+                timestamp = LoadClock.nowMicros();
+            }
+
+            try {
+                publisher.publishAsync(DummyMessage.builder().id(++id).message(payload).timestamp(timestamp).build());
+                sent.increment();
+            } catch (PublishRejectedException e) {
+                rejected.increment();
+            }
+        }
+    }
+
+    /**
+     * Waits until the messages that were sent since the sink had received receivedBefore messages have arrived. The baseline is taken
+     * before sending, as most messages arrive while they are being sent.
+     */
+    private void awaitReceived(LatencyRecordingSink sink, long receivedBefore) {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        long expected = receivedBefore + sent.sum();
+        while (sink.getReceived() < expected && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private void report(Histogram histogram, long received, double elapsedSeconds) throws FileNotFoundException {
+        PrintStream out = System.out;
+        out.printf("Sent %d, rejected %d and received %d messages in %.1f seconds (%.0f messages per second)%n",
+            sent.sum(), rejected.sum(), received, elapsedSeconds, received / elapsedSeconds);
+        out.printf("Latency in milliseconds: p50 %.3f, p99 %.3f, p99.9 %.3f, max %.3f%n",
+            histogram.getValueAtPercentile(50) / 1000.0,
+            histogram.getValueAtPercentile(99) / 1000.0,
+            histogram.getValueAtPercentile(99.9) / 1000.0,
+            histogram.getMaxValue() / 1000.0);
+        histogram.outputPercentileDistribution(out, 1000.0);
+
+        File file = new File(histogramFile);
+        HistogramLogWriter writer = new HistogramLogWriter(file);
+        writer.outputLogFormatVersion();
+        writer.outputLegend();
+        writer.outputIntervalHistogram(histogram);
+        writer.close();
+        out.printf("Histogram log written to %s (values in microseconds)%n", file.getAbsolutePath());
+    }
+}
@@ -0,0 +1,10 @@
+package nl.luminis.articles.pubsub.load;
+
+public enum LoadMode {
+    // Publish at a fixed rate, regardless of how fast the service keeps up (open loop). Every message is stamped with the time at which
+    // it should have been sent, so that a stalled generator does not hide latency (coordinated omission).
+    FIXED_RATE,
+    // Publish as fast as the publisher accepts messages, to find the maximum sustainable throughput. Latencies measured this way only
+    // reflect the load the service let through.
+    MAX_THROUGHPUT;
+}
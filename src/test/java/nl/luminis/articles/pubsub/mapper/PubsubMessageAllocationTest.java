@@ -0,0 +1,88 @@
+package nl.luminis.articles.pubsub.mapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the bytes allocated per message by the reusable-buffer and stream-based paths with the original serialization and
+ * deserialization code.
+ */
+@Slf4j
+public class PubsubMessageAllocationTest {
+
+    private static final int PAYLOAD_SIZE = 16 * 1024;
+    private static final int ITERATIONS = 2_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PubsubMessageMapper mapper = new PubsubMessageMapper(PubsubMessageMapperTest.createCodecRegistry(objectMapper));
+    private final PubsubMessageReader reader = new PubsubMessageReader(PubsubMessageMapperTest.createCodecRegistry(objectMapper));
+    private final DummyMessage message = DummyMessage.builder().id(1L).message("x".repeat(PAYLOAD_SIZE)).build();
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void testSerializationAllocatesLessThanOriginalPath() {
+        long original = measure(() -> {
+            byte[] bytes = objectMapper.writeValueAsBytes(message);
+            PubsubMessage.newBuilder().setData(ByteString.copyFrom(bytes)).build();
+        });
+        long current = measure(() -> mapper.apply(message));
+
+        log.info("Serialization allocates {} bytes per message, originally {} bytes", current, original);
+        assertThat(current).isLessThan(original);
+    }
+
+    @Test
+    public void testDeserializationAllocatesLessThanOriginalPath() {
+        PubsubMessage pubsubMessage = mapper.apply(message);
+
+        long original = measure(() -> {
+            String data = new String(pubsubMessage.getData().toByteArray());
+            objectMapper.readValue(data, DummyMessage.class);
+        });
+        long current = measure(() -> reader.read(pubsubMessage, DummyMessage.class));
+
+        log.info("Deserialization allocates {} bytes per message, originally {} bytes", current, original);
+        assertThat(current).isLessThan(original);
+    }
+
+    private long measure(IoRunnable runnable) {
+        try {
+            // Warm up first so that neither path is measured while it is still interpreted or filling its caches.
+            for (int i = 0; i < ITERATIONS; i++) {
+                runnable.run();
+            }
+            long threadId = Thread.currentThread().getId();
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                runnable.run();
+            }
+            return (threadMXBean.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private interface IoRunnable {
+
+        void run() throws IOException;
+    }
+}
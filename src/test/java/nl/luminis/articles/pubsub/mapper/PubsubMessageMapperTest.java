@@ -1,36 +1,193 @@
 package nl.luminis.articles.pubsub.mapper;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.when;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.PubsubMessage;
 import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import nl.luminis.articles.pubsub.claimcheck.BlobStore;
+import nl.luminis.articles.pubsub.claimcheck.FileSystemBlobStore;
+import nl.luminis.articles.pubsub.codec.CodecConfig;
+import nl.luminis.articles.pubsub.codec.ContentEncoding;
+import nl.luminis.articles.pubsub.codec.ContentTypes;
+import nl.luminis.articles.pubsub.codec.PayloadCodecRegistry;
+import nl.luminis.articles.pubsub.codec.UnreadablePayloadException;
 import nl.luminis.articles.pubsub.dto.DummyMessage;
+import org.junit.Rule;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
-import org.mockito.junit.MockitoJUnitRunner;
+import org.junit.rules.TemporaryFolder;
 
-@RunWith(MockitoJUnitRunner.class)
 public class PubsubMessageMapperTest {
 
-    @InjectMocks
-    private PubsubMessageMapper pubsubMessageMapper;
-    @Mock
-    private ObjectMapper mapper;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final PubsubMessageMapper pubsubMessageMapper = new PubsubMessageMapper(createCodecRegistry(mapper));
+    private final PubsubMessageReader pubsubMessageReader = new PubsubMessageReader(createCodecRegistry(mapper));
 
     @Test
     public void testApply() throws IOException {
         DummyMessage message = DummyMessage.builder().id(1L).message("message").build();
-        byte[] bytes = "test".getBytes();
-
-        when(mapper.writeValueAsBytes(message)).thenReturn(bytes);
+        byte[] bytes = mapper.writeValueAsBytes(message);
 
         PubsubMessage pubsubMessage = pubsubMessageMapper.apply(message);
 
         assertThat(pubsubMessage.getData()).isEqualTo(ByteString.copyFrom(bytes));
+        assertThat(pubsubMessage.getAttributesMap()).containsEntry(MessageAttributes.CONTENT_TYPE, ContentTypes.JSON);
+    }
+
+    @Test
+    public void testApplyCopiesAnnotatedFieldsToAttributes() {
+        DummyMessage message = DummyMessage.builder().id(1L).message("message").type("audit").build();
+
+        PubsubMessage pubsubMessage = pubsubMessageMapper.apply(message);
+
+        assertThat(pubsubMessage.getAttributesMap())
+            .containsEntry(MessageAttributes.TYPE, "audit")
+            .doesNotContainKey(MessageAttributes.TENANT);
+    }
+
+    @Test
+    public void testApplyDoesNotShareBufferBetweenMessages() {
+        PubsubMessage first = pubsubMessageMapper.apply(DummyMessage.builder().id(1L).message("first").build());
+        PubsubMessage second = pubsubMessageMapper.apply(DummyMessage.builder().id(2L).message("second").build());
+
+        assertThat(first.getData().toStringUtf8()).contains("first");
+        assertThat(second.getData().toStringUtf8()).contains("second");
+    }
+
+    @Test
+    public void testRoundTripForEveryContentType() throws IOException {
+        DummyMessage message = DummyMessage.builder().id(42L).message("message").build();
+
+        for (String contentType : List.of(ContentTypes.JSON, ContentTypes.SMILE, ContentTypes.CBOR, ContentTypes.PROTOBUF)) {
+            PubsubMessage pubsubMessage = pubsubMessageMapper.apply(message, contentType);
+            DummyMessage result = pubsubMessageReader.read(pubsubMessage, DummyMessage.class);
+
+            assertThat(pubsubMessage.getAttributesMap()).containsEntry(MessageAttributes.CONTENT_TYPE, contentType);
+            assertThat(result.getId()).isEqualTo(42L);
+            assertThat(result.getMessage()).isEqualTo("message");
+        }
+    }
+
+    @Test
+    public void testRoundTripForEveryContentEncoding() throws IOException {
+        DummyMessage message = DummyMessage.builder().id(42L).message("message ".repeat(1000)).build();
+        int uncompressedSize = pubsubMessageMapper.apply(message).getData().size();
+
+        for (ContentEncoding encoding : List.of(ContentEncoding.GZIP, ContentEncoding.LZ4)) {
+            PubsubMessage pubsubMessage = pubsubMessageMapper.apply(message, ContentTypes.JSON, "", encoding, 1024);
+            DummyMessage result = pubsubMessageReader.read(pubsubMessage, DummyMessage.class);
+
+            assertThat(pubsubMessage.getAttributesMap()).containsEntry(MessageAttributes.CONTENT_ENCODING, encoding.getName());
+            assertThat(pubsubMessage.getData().size()).isLessThan(uncompressedSize / 5);
+            assertThat(result.getMessage()).isEqualTo(message.getMessage());
+        }
+    }
+
+    @Test
+    public void testSmallPayloadIsNotCompressed() throws IOException {
+        DummyMessage message = DummyMessage.builder().id(1L).message("message").build();
+
+        PubsubMessage pubsubMessage = pubsubMessageMapper.apply(message, ContentTypes.JSON, "", ContentEncoding.GZIP, 1024);
+
+        assertThat(pubsubMessage.getAttributesMap()).doesNotContainKey(MessageAttributes.CONTENT_ENCODING);
+        assertThat(pubsubMessage.getData()).isEqualTo(ByteString.copyFrom(mapper.writeValueAsBytes(message)));
+    }
+
+    @Test
+    public void testLargePayloadIsOffloadedToBlobStore() throws IOException {
+        BlobStore blobStore = new FileSystemBlobStore(folder.getRoot().toPath());
+        PubsubMessageMapper claimCheckMapper = new PubsubMessageMapper(createCodecRegistry(mapper), Optional.of(blobStore));
+        PubsubMessageReader claimCheckReader = new PubsubMessageReader(createCodecRegistry(mapper), Optional.of(blobStore));
+        DummyMessage small = DummyMessage.builder().id(1L).message("message").build();
+        DummyMessage large = DummyMessage.builder().id(2L).message("message ".repeat(1000)).build();
+
+        PubsubMessage smallMessage = claimCheckMapper.apply(small, ContentTypes.JSON, "", ContentEncoding.NONE, 0, 1024);
+        PubsubMessage largeMessage = claimCheckMapper.apply(large, ContentTypes.JSON, "", ContentEncoding.NONE, 0, 1024);
+
+        assertThat(smallMessage.getAttributesMap()).doesNotContainKey(MessageAttributes.CLAIM_CHECK);
+        assertThat(largeMessage.getAttributesMap()).containsKey(MessageAttributes.CLAIM_CHECK);
+        assertThat(largeMessage.getData().isEmpty()).isTrue();
+        assertThat(claimCheckReader.read(largeMessage, DummyMessage.class).getMessage()).isEqualTo(large.getMessage());
+    }
+
+    @Test
+    public void testReadDeletedOffloadedPayload() throws IOException {
+        BlobStore blobStore = new FileSystemBlobStore(folder.getRoot().toPath());
+        PubsubMessageMapper claimCheckMapper = new PubsubMessageMapper(createCodecRegistry(mapper), Optional.of(blobStore));
+        PubsubMessageReader claimCheckReader = new PubsubMessageReader(createCodecRegistry(mapper), Optional.of(blobStore));
+        DummyMessage message = DummyMessage.builder().id(1L).message("message ".repeat(1000)).build();
+        PubsubMessage pubsubMessage = claimCheckMapper.apply(message, ContentTypes.JSON, "", ContentEncoding.GZIP, 1024, 0);
+
+        blobStore.delete(pubsubMessage.getAttributesOrThrow(MessageAttributes.CLAIM_CHECK));
+
+        assertThatThrownBy(() -> claimCheckReader.read(pubsubMessage, DummyMessage.class)).isInstanceOf(UnreadablePayloadException.class);
+        assertThatThrownBy(() -> pubsubMessageReader.read(pubsubMessage, DummyMessage.class)).isInstanceOf(UnreadablePayloadException.class);
+    }
+
+    @Test
+    public void testDiscardDeletesOffloadedPayload() throws IOException {
+        BlobStore blobStore = new FileSystemBlobStore(folder.getRoot().toPath());
+        PubsubMessageMapper claimCheckMapper = new PubsubMessageMapper(createCodecRegistry(mapper), Optional.of(blobStore));
+        DummyMessage message = DummyMessage.builder().id(1L).message("message ".repeat(1000)).build();
+        PubsubMessage pubsubMessage = claimCheckMapper.apply(message, ContentTypes.JSON, "", ContentEncoding.NONE, 0, 1024);
+
+        claimCheckMapper.discard(pubsubMessage);
+
+        assertThat(blobStore.get(pubsubMessage.getAttributesOrThrow(MessageAttributes.CLAIM_CHECK))).isNull();
+    }
+
+    @Test
+    public void testReadCorruptCompressedPayload() {
+        PubsubMessage pubsubMessage = PubsubMessage
+            .newBuilder()
+            .setData(ByteString.copyFromUtf8("{\"id\":1}"))
+            .putAttributes(MessageAttributes.CONTENT_ENCODING, ContentEncoding.GZIP.getName())
+            .build();
+
+        assertThatThrownBy(() -> pubsubMessageReader.read(pubsubMessage, DummyMessage.class)).isInstanceOf(UnreadablePayloadException.class);
+    }
+
+    @Test
+    public void testReadUnsupportedContentEncoding() {
+        PubsubMessage pubsubMessage = PubsubMessage.newBuilder().putAttributes(MessageAttributes.CONTENT_ENCODING, "br").build();
+
+        assertThatThrownBy(() -> pubsubMessageReader.read(pubsubMessage, DummyMessage.class)).isInstanceOf(UnreadablePayloadException.class);
+    }
+
+    @Test
+    public void testReadWithoutContentTypeDefaultsToJson() throws IOException {
+        PubsubMessage pubsubMessage = PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("{\"id\":1,\"message\":\"message\"}")).build();
+
+        assertThat(pubsubMessageReader.read(pubsubMessage, DummyMessage.class).getId()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testReadUnsupportedContentType() {
+        PubsubMessage pubsubMessage = PubsubMessage.newBuilder().putAttributes(MessageAttributes.CONTENT_TYPE, "text/plain").build();
+
+        assertThatThrownBy(() -> pubsubMessageReader.read(pubsubMessage, DummyMessage.class)).isInstanceOf(UnreadablePayloadException.class);
+    }
+
+    @Test
+    public void testReadMalformedPayload() {
+        PubsubMessage pubsubMessage = PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("{not json")).build();
+
+        assertThatThrownBy(() -> pubsubMessageReader.read(pubsubMessage, DummyMessage.class)).isInstanceOf(UnreadablePayloadException.class);
+    }
+
+    static PayloadCodecRegistry createCodecRegistry(ObjectMapper mapper) {
+        CodecConfig codecConfig = new CodecConfig();
+        return new PayloadCodecRegistry(List.of(
+            codecConfig.createJsonCodec(mapper),
+            codecConfig.createSmileCodec(),
+            codecConfig.createCborCodec(),
+            codecConfig.createProtobufCodec()));
     }
 }
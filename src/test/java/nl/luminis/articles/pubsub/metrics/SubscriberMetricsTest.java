@@ -0,0 +1,57 @@
+package nl.luminis.articles.pubsub.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SubscriberMetricsTest {
+
+    private MeterRegistry meterRegistry;
+    private PubSubMetrics pubSubMetrics;
+    private SubscriberMetrics metrics;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        pubSubMetrics = new PubSubMetrics(meterRegistry);
+        metrics = pubSubMetrics.forSubscription("my-subscription");
+    }
+
+    @Test
+    public void testRepliesAreCountedAndTimed() {
+        long first = metrics.recordReceived(10);
+        long second = metrics.recordReceived(20);
+        metrics.recordReceived(30);
+        metrics.recordAck(first);
+        metrics.recordNack(second);
+
+        assertThat(meterRegistry.get("pubsub.subscriber.replies").tags("subscription", "my-subscription", "reply", "ack").counter().count())
+            .isEqualTo(1);
+        assertThat(meterRegistry.get("pubsub.subscriber.replies").tag("reply", "nack").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("pubsub.subscriber.processing").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("pubsub.subscriber.message.size").summary().totalAmount()).isEqualTo(60);
+        assertThat(meterRegistry.get("pubsub.subscriber.outstanding").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    public void testOutstandingGaugeCountsForAllSubscribersOfASubscription() {
+        SubscriberMetrics other = pubSubMetrics.forSubscription("other-subscription");
+        SubscriberMetrics second = pubSubMetrics.forSubscription("my-subscription");
+        metrics.recordReceived(10);
+        second.recordReceived(10);
+        other.recordReceived(10);
+
+        assertThat(meterRegistry.get("pubsub.subscriber.outstanding").tag("subscription", "my-subscription").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    public void testBacklogGaugeReadsTheSize() {
+        StringBuilder backlog = new StringBuilder("abc");
+        metrics.registerBacklog(backlog, StringBuilder::length);
+
+        assertThat(meterRegistry.get("pubsub.subscriber.backlog").gauge().value()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,90 @@
+package nl.luminis.articles.pubsub.publisher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.pubsub.v1.ProjectTopicName;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PublisherRegistryTest {
+
+    private static final ProjectTopicName FIRST_TOPIC = ProjectTopicName.of("my-gcp-project", "first-topic");
+    private static final ProjectTopicName SECOND_TOPIC = ProjectTopicName.of("my-gcp-project", "second-topic");
+
+    private PublisherFactory publisherFactory;
+    private MeterRegistry meterRegistry;
+    private Publisher firstPublisher;
+    private Publisher secondPublisher;
+    private PublisherRegistry registry;
+
+    @Before
+    public void setUp() {
+        PubSubConfig config = new PubSubConfig();
+        config.setPublisherRegistryMaximumSize(1);
+        config.setPublisherRegistryIdleTimeoutSeconds(600);
+
+        publisherFactory = mock(PublisherFactory.class);
+        firstPublisher = mock(Publisher.class);
+        secondPublisher = mock(Publisher.class);
+        meterRegistry = new SimpleMeterRegistry();
+        PubSubMetrics pubSubMetrics = new PubSubMetrics(meterRegistry);
+        when(publisherFactory.build(FIRST_TOPIC))
+            .thenReturn(new TopicPublisher(FIRST_TOPIC, firstPublisher, null, pubSubMetrics.forTopic(FIRST_TOPIC.getTopic())));
+        when(publisherFactory.build(SECOND_TOPIC))
+            .thenReturn(new TopicPublisher(SECOND_TOPIC, secondPublisher, null, pubSubMetrics.forTopic(SECOND_TOPIC.getTopic())));
+
+        registry = new PublisherRegistry(config, publisherFactory);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        registry.preDestroy();
+    }
+
+    @Test
+    public void testPublisherIsCreatedOnce() {
+        assertThat(registry.get(FIRST_TOPIC).getPublisher()).isSameAs(firstPublisher);
+        assertThat(registry.get(FIRST_TOPIC).getPublisher()).isSameAs(firstPublisher);
+
+        verify(publisherFactory, times(1)).build(FIRST_TOPIC);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPublisherIsShutDown() throws Exception {
+        registry.get(FIRST_TOPIC);
+        registry.get(SECOND_TOPIC);
+
+        verify(firstPublisher, timeout(1000)).shutdown();
+        verify(secondPublisher, never()).shutdown();
+        assertThat(registry.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testMetersAreRemovedWithPublisher() {
+        registry.get(FIRST_TOPIC);
+        registry.get(SECOND_TOPIC);
+
+        assertThat(meterRegistry.find("pubsub.publisher.latency").tag("topic", FIRST_TOPIC.getTopic()).timer()).isNull();
+        assertThat(meterRegistry.find("pubsub.publisher.latency").tag("topic", SECOND_TOPIC.getTopic()).timer()).isNotNull();
+    }
+
+    @Test
+    public void testAllPublishersAreShutDownOnDestroy() throws Exception {
+        registry.get(FIRST_TOPIC);
+        registry.preDestroy();
+
+        verify(firstPublisher).shutdown();
+    }
+}
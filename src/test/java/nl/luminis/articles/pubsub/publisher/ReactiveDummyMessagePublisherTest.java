@@ -0,0 +1,87 @@
+package nl.luminis.articles.pubsub.publisher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+
+public class ReactiveDummyMessagePublisherTest {
+
+    private static final String TOPIC = "my-topic";
+
+    private DummyMessagePublisher publisher;
+    private List<CompletableFuture<String>> futures;
+    private ReactiveDummyMessagePublisher reactivePublisher;
+
+    @Before
+    public void setUp() {
+        PubSubConfig config = new PubSubConfig();
+        config.setTopicName(TOPIC);
+        config.setMaxInFlightReactivePublishes(2);
+
+        futures = new ArrayList<>();
+        publisher = mock(DummyMessagePublisher.class);
+        when(publisher.publishAsync(eq(TOPIC), eq(DummyMessagePublisher.NO_ORDERING_KEY), any(DummyMessage.class))).thenAnswer(invocation -> {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            futures.add(future);
+            return future;
+        });
+
+        reactivePublisher = new ReactiveDummyMessagePublisher(config, publisher);
+    }
+
+    @Test
+    public void testNothingIsPublishedBeforeSubscribing() {
+        reactivePublisher.publish(DummyMessage.builder().id(1L).message("one").build());
+
+        verify(publisher, never()).publishAsync(any(), any(), any());
+    }
+
+    @Test
+    public void testInFlightPublishesAreBounded() {
+        List<String> messageIds = new ArrayList<>();
+        reactivePublisher
+            .publishAll(Flux.range(1, 5).map(i -> DummyMessage.builder().id(i).message("message " + i).build()))
+            .subscribe(messageIds::add);
+
+        assertThat(futures).hasSize(2);
+
+        // Message IDs are emitted in the order of the messages, so the second waits for the first.
+        futures.get(1).complete("id-2");
+        assertThat(messageIds).isEmpty();
+
+        futures.get(0).complete("id-1");
+        assertThat(messageIds).containsExactly("id-1", "id-2");
+        assertThat(futures).hasSize(4);
+
+        futures.get(2).complete("id-3");
+        futures.get(3).complete("id-4");
+        futures.get(4).complete("id-5");
+        assertThat(messageIds).containsExactly("id-1", "id-2", "id-3", "id-4", "id-5");
+    }
+
+    @Test
+    public void testSpooledMessageIsEmitted() {
+        List<String> messageIds = new ArrayList<>();
+        reactivePublisher
+            .publishAll(Flux.range(1, 2).map(i -> DummyMessage.builder().id(i).message("message " + i).build()))
+            .subscribe(messageIds::add);
+
+        futures.get(0).complete(DummyMessagePublisher.SPOOLED);
+        futures.get(1).complete("id-2");
+
+        assertThat(messageIds).containsExactly(DummyMessagePublisher.SPOOLED, "id-2");
+    }
+}
@@ -0,0 +1,93 @@
+package nl.luminis.articles.pubsub.publisher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.dto.StreamPublishResult;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamPublisherTest {
+
+    private DummyMessagePublisher publisher;
+    private List<CompletableFuture<String>> futures;
+    private StreamPublisher streamPublisher;
+
+    @Before
+    public void setUp() {
+        PubSubConfig config = new PubSubConfig();
+        config.setMaxInFlightStreamPublishes(2);
+
+        futures = new CopyOnWriteArrayList<>();
+        publisher = mock(DummyMessagePublisher.class);
+        when(publisher.publishAsync(any(DummyMessage.class))).thenAnswer(invocation -> {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            futures.add(future);
+            return future;
+        });
+
+        streamPublisher = new StreamPublisher(config, publisher, new ObjectMapper());
+    }
+
+    @Test
+    public void testReadingPausesWhileTooManyMessagesAreInFlight() throws Exception {
+        CompletableFuture<StreamPublishResult> result = CompletableFuture.supplyAsync(() -> publish(lines(1, 5)));
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> futures.size() == 2);
+        Thread.sleep(100);
+        assertThat(futures).hasSize(2);
+
+        futures.get(0).complete("id-1");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> futures.size() == 3);
+        futures.get(1).completeExceptionally(new IllegalStateException("Not accepted"));
+        futures.get(2).complete("id-3");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> futures.size() == 5);
+        assertThat(result).isNotDone();
+        futures.get(3).complete("id-4");
+        futures.get(4).complete("id-5");
+
+        StreamPublishResult published = result.get(5, TimeUnit.SECONDS);
+        assertThat(published.getAccepted()).isEqualTo(4);
+        assertThat(published.getFailed()).isEqualTo(1);
+        assertThat(published.getError()).isNull();
+    }
+
+    @Test
+    public void testMalformedLineStopsReading() throws Exception {
+        when(publisher.publishAsync(any(DummyMessage.class))).thenReturn(CompletableFuture.completedFuture("id"));
+
+        StreamPublishResult result = publish(lines(1, 2) + "{\"id\": 3, \n" + lines(4, 4));
+
+        assertThat(result.getAccepted()).isEqualTo(2);
+        assertThat(result.getError()).isNotNull();
+    }
+
+    private StreamPublishResult publish(String body) {
+        try (InputStream input = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))) {
+            return streamPublisher.publish(input);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String lines(int from, int to) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = from; i <= to; i++) {
+            lines.append("{\"id\": ").append(i).append(", \"message\": \"message ").append(i).append("\"}\n");
+        }
+        return lines.toString();
+    }
+}
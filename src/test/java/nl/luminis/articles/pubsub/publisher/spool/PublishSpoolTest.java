@@ -0,0 +1,81 @@
+package nl.luminis.articles.pubsub.publisher.spool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PubsubMessage;
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PublishSpoolTest {
+
+    private static final ProjectTopicName TOPIC = ProjectTopicName.of("my-gcp-project", "my-topic");
+    private static final ProjectTopicName DELETED_TOPIC = ProjectTopicName.of("my-gcp-project", "deleted-topic");
+    private static final PubsubMessage MESSAGE = PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("{}")).build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PublisherRegistry publisherRegistry;
+    private PublishSpool spool;
+
+    @Before
+    public void setUp() throws IOException {
+        PubSubConfig config = new PubSubConfig();
+        config.setSpoolDirectory(folder.getRoot().getPath());
+        config.setSpoolSegmentSizeBytes(1024 * 1024);
+        config.setSpoolMaxSegments(4);
+        // Replays are started by the tests.
+        config.setSpoolReplayIntervalMillis(60_000L);
+        config.setSpoolReplayBatchSize(10);
+        config.setSpoolReplayTimeoutSeconds(5L);
+        publisherRegistry = mock(PublisherRegistry.class);
+        spool = new PublishSpool(config, publisherRegistry, new PubSubMetrics(new SimpleMeterRegistry()));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        spool.preDestroy();
+    }
+
+    @Test
+    public void testMessageForDeletedTopicDoesNotHoldUpLaterMessages() {
+        when(publisherRegistry.publish(eq(DELETED_TOPIC), any())).thenReturn(ApiFutures.immediateFailedFuture(
+            ApiExceptionFactory.createException(new RuntimeException("Topic not found"), GrpcStatusCode.of(Status.Code.NOT_FOUND), false)));
+        when(publisherRegistry.publish(eq(TOPIC), any())).thenReturn(ApiFutures.immediateFuture("message-1"));
+        spool.offer(DELETED_TOPIC, MESSAGE);
+        spool.offer(TOPIC, MESSAGE);
+
+        spool.replay();
+
+        assertThat(spool.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testMessageIsKeptWhilePubSubIsUnavailable() {
+        when(publisherRegistry.publish(eq(TOPIC), any())).thenReturn(ApiFutures.immediateFailedFuture(
+            ApiExceptionFactory.createException(new RuntimeException("Connection refused"), GrpcStatusCode.of(Status.Code.UNAVAILABLE), true)));
+        spool.offer(TOPIC, MESSAGE);
+
+        spool.replay();
+
+        assertThat(spool.isEmpty()).isFalse();
+    }
+}
@@ -0,0 +1,115 @@
+package nl.luminis.articles.pubsub.publisher.spool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentLogTest {
+
+    // Room for three records of "record-N" with their headers.
+    private static final int SEGMENT_SIZE = 3 * (8 + 8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath();
+    }
+
+    @Test
+    public void testRecordsAreReadInOrderUntilAcknowledged() throws IOException {
+        try (SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 4)) {
+            append(log, 1, 5);
+
+            assertThat(peek(log, 2)).containsExactly("record-1", "record-2");
+            assertThat(peek(log, 2)).containsExactly("record-1", "record-2");
+
+            log.acknowledge();
+
+            assertThat(peek(log, 10)).containsExactly("record-3", "record-4", "record-5");
+            log.acknowledge();
+            assertThat(log.isEmpty()).isTrue();
+            assertThat(log.getSize()).isZero();
+        }
+    }
+
+    @Test
+    public void testReadSegmentsAreDeleted() throws IOException {
+        try (SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 4)) {
+            append(log, 1, 7);
+            assertThat(segmentFiles()).hasSize(3);
+
+            peek(log, 4);
+            log.acknowledge();
+
+            assertThat(segmentFiles()).hasSize(2);
+        }
+    }
+
+    @Test
+    public void testAppendIsRefusedWhenAllSegmentsAreFull() throws IOException {
+        try (SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 2)) {
+            append(log, 1, 6);
+
+            assertThat(log.append(bytes("record-7"))).isFalse();
+
+            peek(log, 3);
+            log.acknowledge();
+            assertThat(log.append(bytes("record-7"))).isTrue();
+        }
+    }
+
+    @Test
+    public void testRecordLargerThanSegmentIsRejected() throws IOException {
+        try (SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 2)) {
+            assertThatThrownBy(() -> log.append(new byte[SEGMENT_SIZE])).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void testUnacknowledgedRecordsSurviveReopening() throws IOException {
+        try (SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 4)) {
+            append(log, 1, 5);
+            peek(log, 2);
+            log.acknowledge();
+            peek(log, 2);
+        }
+
+        try (SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 4)) {
+            append(log, 6, 6);
+
+            assertThat(peek(log, 10)).containsExactly("record-3", "record-4", "record-5", "record-6");
+        }
+    }
+
+    private static void append(SegmentLog log, int from, int to) throws IOException {
+        for (int i = from; i <= to; i++) {
+            assertThat(log.append(bytes("record-" + i))).isTrue();
+        }
+    }
+
+    private static List<String> peek(SegmentLog log, int maxRecords) throws IOException {
+        return log.peek(maxRecords).stream().map(record -> new String(record, StandardCharsets.UTF_8)).collect(Collectors.toList());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private File[] segmentFiles() {
+        return folder.getRoot().listFiles((dir, name) -> name.endsWith(".segment"));
+    }
+}
@@ -0,0 +1,111 @@
+package nl.luminis.articles.pubsub.subscriber;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.pubsub.v1.PubsubMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Optional;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.codec.CodecConfig;
+import nl.luminis.articles.pubsub.codec.PayloadCodecRegistry;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageMapper;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageReader;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import nl.luminis.articles.pubsub.subscriber.sink.FullSinkPolicy;
+import nl.luminis.articles.pubsub.subscriber.sink.RingBufferMessageSink;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class DummyMessageSubscriberTest {
+
+    private static final String SUBSCRIPTION = "my-subscription";
+
+    private MeterRegistry meterRegistry;
+    private RingBufferMessageSink<DummyMessage> sink;
+    private PubsubMessageMapper mapper;
+    private DummyMessageSubscriber subscriber;
+
+    @Before
+    public void setUp() {
+        PubSubConfig config = new PubSubConfig();
+        config.setEnvironment(new MockEnvironment().withProperty("gcloud.pubsub.subscription.deduplication.key", "MESSAGE_ID"));
+        config.setGcpProjectName("my-gcp-project");
+        config.setSubscriptionName(SUBSCRIPTION);
+
+        CodecConfig codecConfig = new CodecConfig();
+        PayloadCodecRegistry codecRegistry = new PayloadCodecRegistry(List.of(codecConfig.createJsonCodec(new ObjectMapper())));
+        mapper = new PubsubMessageMapper(codecRegistry);
+        SubscriberFactory subscriberFactory = mock(SubscriberFactory.class);
+        when(subscriberFactory.build(any(), any(), any())).thenReturn(mock(Subscriber.class, RETURNS_SELF));
+        meterRegistry = new SimpleMeterRegistry();
+        sink = new RingBufferMessageSink<>(16, FullSinkPolicy.NACK);
+
+        subscriber = new DummyMessageSubscriber(config, subscriberFactory, new PubsubMessageReader(codecRegistry), sink,
+            new PubSubMetrics(meterRegistry), Optional.empty(), Optional.empty(), Optional.empty(), mock(PublisherRegistry.class));
+    }
+
+    @After
+    public void tearDown() {
+        subscriber.preDestroy();
+    }
+
+    @Test
+    public void testRedeliveredMessageIsAckedButNotProcessedAgain() {
+        PubsubMessage pubsubMessage = mapper
+            .apply(DummyMessage.builder().id(1L).message("message 1").build())
+            .toBuilder()
+            .setMessageId("42")
+            .build();
+        AckReplyConsumer first = mock(AckReplyConsumer.class);
+        AckReplyConsumer redelivery = mock(AckReplyConsumer.class);
+
+        subscriber.receiveMessage(pubsubMessage, first);
+        subscriber.receiveMessage(pubsubMessage, redelivery);
+
+        assertThat(sink.size()).isEqualTo(1);
+        verify(first).ack();
+        verify(redelivery).ack();
+        verify(redelivery, never()).nack();
+        assertThat(meterRegistry.get("pubsub.subscriber.deduplication").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testMessageThatDoesNotFitInTheSinkIsNotNackedRightAway() {
+        for (long id = 1; id <= 16; id++) {
+            subscriber.receiveMessage(toPubsubMessage(String.valueOf(id), id), mock(AckReplyConsumer.class));
+        }
+        AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+        subscriber.receiveMessage(toPubsubMessage("17", 17L), consumer);
+
+        assertThat(sink.size()).isEqualTo(16);
+        verify(consumer, never()).ack();
+        verify(consumer, never()).nack();
+        // Stopping the subscriber nacks the messages that are waiting for a retry.
+        subscriber.preDestroy();
+        verify(consumer).nack();
+    }
+
+    private PubsubMessage toPubsubMessage(String messageId, long id) {
+        return mapper
+            .apply(DummyMessage.builder().id(id).message("message " + id).build())
+            .toBuilder()
+            .setMessageId(messageId)
+            .build();
+    }
+}
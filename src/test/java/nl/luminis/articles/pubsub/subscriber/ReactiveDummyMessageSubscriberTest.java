@@ -0,0 +1,161 @@
+package nl.luminis.articles.pubsub.subscriber;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PubsubMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.codec.CodecConfig;
+import nl.luminis.articles.pubsub.codec.PayloadCodecRegistry;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageMapper;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageReader;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+public class ReactiveDummyMessageSubscriberTest {
+
+    private static final String PROJECT = "my-gcp-project";
+    private static final String SUBSCRIPTION = "my-subscription";
+    private static final ProjectTopicName DEAD_LETTER_TOPIC = ProjectTopicName.of(PROJECT, "my-dead-letters");
+
+    private final List<DummyMessage> processed = new CopyOnWriteArrayList<>();
+    private PubsubMessageMapper mapper;
+    private PublisherRegistry publisherRegistry;
+    private MessageReceiver receiver;
+    private ReactiveDummyMessageSubscriber reactiveSubscriber;
+    private Disposable subscription;
+
+    @Before
+    public void setUp() {
+        PubSubConfig config = new PubSubConfig();
+        config.setEnvironment(new MockEnvironment()
+            .withProperty("gcloud.pubsub.subscription.deduplication.key", "MESSAGE_ID")
+            .withProperty("gcloud.pubsub.subscription.retry.max-attempts", "1")
+            .withProperty("gcloud.pubsub.subscription.dead-letter-topic", DEAD_LETTER_TOPIC.getTopic()));
+        config.setGcpProjectName(PROJECT);
+
+        CodecConfig codecConfig = new CodecConfig();
+        PayloadCodecRegistry codecRegistry = new PayloadCodecRegistry(List.of(codecConfig.createJsonCodec(new ObjectMapper())));
+        mapper = new PubsubMessageMapper(codecRegistry);
+        publisherRegistry = mock(PublisherRegistry.class);
+        when(publisherRegistry.publish(eq(DEAD_LETTER_TOPIC), any())).thenReturn(ApiFutures.immediateFuture("dead-letter-1"));
+
+        SubscriberFactory subscriberFactory = mock(SubscriberFactory.class);
+        when(subscriberFactory.build(any(), any(), any())).thenAnswer(invocation -> {
+            receiver = invocation.getArgument(1);
+            return mock(Subscriber.class);
+        });
+
+        reactiveSubscriber = new ReactiveDummyMessageSubscriber(config, subscriberFactory,
+            new PubsubMessageReader(codecRegistry), new PubSubMetrics(new SimpleMeterRegistry()), publisherRegistry);
+        subscription = reactiveSubscriber
+            .subscribe(SUBSCRIPTION, message -> {
+                if (message.getId() < 0) {
+                    return Mono.error(new IllegalStateException("Database is down"));
+                }
+                processed.add(message);
+                return Mono.empty();
+            })
+            .subscribe();
+    }
+
+    @After
+    public void tearDown() {
+        subscription.dispose();
+    }
+
+    @Test
+    public void testProcessedMessageIsAcked() {
+        AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+        receiver.receiveMessage(toPubsubMessage("1", 1L), consumer);
+
+        assertThat(processed).extracting(DummyMessage::getId).containsExactly(1L);
+        verify(consumer).ack();
+    }
+
+    @Test
+    public void testRedeliveredMessageIsAckedWithoutProcessing() {
+        AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+        receiver.receiveMessage(toPubsubMessage("1", 1L), consumer);
+        receiver.receiveMessage(toPubsubMessage("1", 1L), consumer);
+
+        assertThat(processed).hasSize(1);
+        verify(consumer, times(2)).ack();
+    }
+
+    @Test
+    public void testUnreadableMessageIsDeadLettered() {
+        AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+        receiver.receiveMessage(PubsubMessage
+            .newBuilder()
+            .setMessageId("1")
+            .setData(ByteString.copyFromUtf8("{not json"))
+            .build(), consumer);
+
+        assertThat(processed).isEmpty();
+        verify(publisherRegistry).publish(eq(DEAD_LETTER_TOPIC), any());
+        verify(consumer).ack();
+    }
+
+    @Test
+    public void testFailedMessageIsRetriedUntilDeadLettered() {
+        AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+        receiver.receiveMessage(toPubsubMessage("1", -1L), consumer);
+
+        verify(publisherRegistry).publish(eq(DEAD_LETTER_TOPIC), any());
+        verify(consumer).ack();
+        verify(consumer, never()).nack();
+    }
+
+    @Test
+    public void testBufferedMessagesAreNackedWhenTheFluxIsCancelled() {
+        subscription.dispose();
+        subscription = reactiveSubscriber.subscribe(SUBSCRIPTION, message -> Mono.never()).subscribe();
+        AckReplyConsumer processing = mock(AckReplyConsumer.class);
+        AckReplyConsumer buffered = mock(AckReplyConsumer.class);
+
+        receiver.receiveMessage(toPubsubMessage("1", 1L), processing);
+        receiver.receiveMessage(toPubsubMessage("2", 2L), buffered);
+        receiver.receiveMessage(toPubsubMessage("3", 3L), buffered);
+        subscription.dispose();
+
+        verify(processing).nack();
+        verify(buffered, times(2)).nack();
+        verify(buffered, never()).ack();
+    }
+
+    private PubsubMessage toPubsubMessage(String messageId, long id) {
+        return mapper
+            .apply(DummyMessage.builder().id(id).message("message " + id).build())
+            .toBuilder()
+            .setMessageId(messageId)
+            .build();
+    }
+}
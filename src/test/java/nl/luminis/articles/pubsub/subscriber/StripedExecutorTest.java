@@ -0,0 +1,58 @@
+package nl.luminis.articles.pubsub.subscriber;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StripedExecutorTest {
+
+    private StripedExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new StripedExecutor(4, "striped-executor-test");
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTasksWithTheSameKeyRunInOrder() throws InterruptedException {
+        Map<String, List<Integer>> processed = new ConcurrentHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            String key = "key-" + (i % 10);
+            int sequence = i;
+            executor.execute(key, () -> processed.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(sequence));
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(processed).hasSize(10);
+        processed.values().forEach(sequences -> assertThat(sequences).hasSize(100).isSorted());
+    }
+
+    @Test
+    public void testKeyIsAlwaysAssignedToTheSameStripe() {
+        assertThat(executor.getStripe("customer-42")).isEqualTo(executor.getStripe("customer-42"));
+    }
+
+    @Test
+    public void testTasksWithoutKeyAreSpreadOverAllStripes() {
+        List<Integer> stripes = new ArrayList<>();
+        for (int i = 0; i < executor.getStripeCount(); i++) {
+            stripes.add(executor.getStripe(""));
+        }
+
+        assertThat(stripes).containsExactlyInAnyOrder(0, 1, 2, 3);
+    }
+}
@@ -0,0 +1,98 @@
+package nl.luminis.articles.pubsub.subscriber.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class MicroBatcherTest {
+
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    private MicroBatcher<Integer> batcher;
+
+    @After
+    public void tearDown() {
+        batcher.close();
+    }
+
+    @Test
+    public void testFullBatchIsHandledAndAcked() {
+        batcher = new MicroBatcher<>("test", 3, Long.MAX_VALUE, 60_000L, batches::add);
+        AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+        batcher.add(1, 10, consumer);
+        batcher.add(2, 10, consumer);
+        assertThat(batches).isEmpty();
+        batcher.add(3, 10, consumer);
+
+        assertThat(batches).containsExactly(List.of(1, 2, 3));
+        verify(consumer, times(3)).ack();
+    }
+
+    @Test
+    public void testBatchIsHandledWhenByteThresholdIsReached() {
+        batcher = new MicroBatcher<>("test", 100, 25L, 60_000L, batches::add);
+
+        batcher.add(1, 10, mock(AckReplyConsumer.class));
+        batcher.add(2, 10, mock(AckReplyConsumer.class));
+        batcher.add(3, 10, mock(AckReplyConsumer.class));
+
+        assertThat(batches).containsExactly(List.of(1, 2, 3));
+    }
+
+    @Test
+    public void testBatchIsHandledAfterDelay() {
+        batcher = new MicroBatcher<>("test", 100, Long.MAX_VALUE, 50L, batches::add);
+
+        batcher.add(1, 10, mock(AckReplyConsumer.class));
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> batches.size() == 1);
+        assertThat(batches).containsExactly(List.of(1));
+    }
+
+    @Test
+    public void testFailedBatchIsNacked() {
+        batcher = new MicroBatcher<>("test", 2, Long.MAX_VALUE, 60_000L, batch -> {
+            throw new IllegalStateException("Database is down");
+        });
+        AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+        batcher.add(1, 10, consumer);
+        batcher.add(2, 10, consumer);
+
+        verify(consumer, times(2)).nack();
+        verify(consumer, never()).ack();
+    }
+
+    @Test
+    public void testPendingBatchIsHandledOnClose() {
+        batcher = new MicroBatcher<>("test", 100, Long.MAX_VALUE, 60_000L, batches::add);
+
+        batcher.add(1, 10, mock(AckReplyConsumer.class));
+        batcher.close();
+
+        assertThat(batches).containsExactly(List.of(1));
+    }
+
+    @Test
+    public void testMessageAddedAfterCloseIsHandledOnItsOwn() {
+        batcher = new MicroBatcher<>("test", 100, Long.MAX_VALUE, 60_000L, batches::add);
+        AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+        batcher.close();
+        batcher.add(1, 10, consumer);
+        batcher.add(2, 10, consumer);
+
+        assertThat(batches).containsExactly(List.of(1), List.of(2));
+        verify(consumer, times(2)).ack();
+    }
+}
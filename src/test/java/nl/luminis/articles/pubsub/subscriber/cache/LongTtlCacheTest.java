@@ -0,0 +1,64 @@
+package nl.luminis.articles.pubsub.subscriber.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class LongTtlCacheTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000L);
+
+    @Test
+    public void testEntriesExpire() {
+        LongTtlCache cache = new LongTtlCache(100, 500L, clock::get);
+
+        cache.put(42L, 7L);
+        assertThat(cache.get(42L, -1L)).isEqualTo(7L);
+
+        clock.addAndGet(499L);
+        assertThat(cache.containsKey(42L)).isTrue();
+        clock.addAndGet(1L);
+        assertThat(cache.containsKey(42L)).isFalse();
+        assertThat(cache.get(42L, -1L)).isEqualTo(-1L);
+    }
+
+    @Test
+    public void testIncrementStartsAtOne() {
+        LongTtlCache cache = new LongTtlCache(100, 500L, clock::get);
+
+        assertThat(cache.increment(42L)).isEqualTo(1L);
+        assertThat(cache.increment(42L)).isEqualTo(2L);
+        cache.remove(42L);
+        assertThat(cache.increment(42L)).isEqualTo(1L);
+    }
+
+    @Test
+    public void testRemovedEntryDoesNotHideLaterEntries() {
+        LongTtlCache cache = new LongTtlCache(16, 500L, clock::get);
+        for (long key = 0; key < 16; key++) {
+            cache.put(key, key);
+        }
+
+        cache.remove(3L);
+
+        for (long key = 0; key < 16; key++) {
+            assertThat(cache.containsKey(key)).isEqualTo(key != 3L);
+        }
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        LongTtlCache cache = new LongTtlCache(1000, 60_000L, clock::get);
+
+        for (long key = 0; key < 10_000; key++) {
+            clock.incrementAndGet();
+            cache.put(key, key);
+        }
+
+        assertThat(cache.getCapacity()).isEqualTo(1024);
+        assertThat(cache.getEvictionCount()).isGreaterThanOrEqualTo(10_000 - 1024);
+        // The most recent entries expire last, so they are the ones that are kept.
+        assertThat(cache.containsKey(9_999L)).isTrue();
+    }
+}
@@ -0,0 +1,164 @@
+package nl.luminis.articles.pubsub.subscriber.pull;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import nl.luminis.articles.pubsub.PubSubConfig;
+import nl.luminis.articles.pubsub.auth.AuthenticationMethod;
+import nl.luminis.articles.pubsub.auth.CredentialsProviderFactory;
+import nl.luminis.articles.pubsub.auth.TransportChannelProviderFactory;
+import nl.luminis.articles.pubsub.codec.CodecConfig;
+import nl.luminis.articles.pubsub.codec.PayloadCodecRegistry;
+import nl.luminis.articles.pubsub.dto.DummyMessage;
+import nl.luminis.articles.pubsub.fake.FakePubSubServer;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageMapper;
+import nl.luminis.articles.pubsub.mapper.PubsubMessageReader;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherFactory;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class PullDrainerTest {
+
+    private static final String PROJECT = "pull-project";
+    private static final String TOPIC = "pull-topic";
+    private static final String SUBSCRIPTION = "pull-subscription";
+    private static final String DEAD_LETTER_TOPIC = "pull-dead-letter-topic";
+    private static final String DEAD_LETTER_SUBSCRIPTION = "pull-dead-letter-subscription";
+    private static final int MESSAGE_COUNT = 100;
+
+    private FakePubSubServer server;
+    private MockEnvironment environment;
+    private PubSubConfig config;
+    private TransportChannelProviderFactory channelProviderFactory;
+    private PubsubMessageMapper mapper;
+    private PublisherRegistry publisherRegistry;
+    private PullDrainer drainer;
+
+    @Before
+    public void setUp() {
+        server = FakePubSubServer.start("pull-drainer-test", PROJECT,
+            "[{\"name\": \"" + TOPIC + "\", \"subscriptions\": [\"" + SUBSCRIPTION + "\"]}, "
+                + "{\"name\": \"" + DEAD_LETTER_TOPIC + "\", \"subscriptions\": [\"" + DEAD_LETTER_SUBSCRIPTION + "\"]}]");
+
+        config = new PubSubConfig();
+        environment = new MockEnvironment()
+            .withProperty("gcloud.pubsub.subscription.pull.max-messages", "10")
+            .withProperty("gcloud.pubsub.subscription.pull.concurrency", "2")
+            .withProperty("gcloud.pubsub.subscription.pull.ack-batch-size", "25")
+            .withProperty("gcloud.pubsub.subscriptions." + SUBSCRIPTION + ".dead-letter-topic", DEAD_LETTER_TOPIC);
+        config.setEnvironment(environment);
+        config.setGcpProjectName(PROJECT);
+        config.setAuthenticationMethod(AuthenticationMethod.NONE);
+        config.setPubSubUrl(server.getUrl());
+
+        CodecConfig codecConfig = new CodecConfig();
+        PayloadCodecRegistry codecRegistry = new PayloadCodecRegistry(List.of(codecConfig.createJsonCodec(new ObjectMapper())));
+        mapper = new PubsubMessageMapper(codecRegistry);
+        channelProviderFactory = new TransportChannelProviderFactory(config);
+        CredentialsProviderFactory credentialsProviderFactory = new CredentialsProviderFactory(config);
+        PubSubMetrics pubSubMetrics = new PubSubMetrics(new SimpleMeterRegistry());
+        publisherRegistry = new PublisherRegistry(config,
+            new PublisherFactory(config, credentialsProviderFactory, channelProviderFactory, pubSubMetrics));
+        drainer = new PullDrainer(config, credentialsProviderFactory, channelProviderFactory, new PubsubMessageReader(codecRegistry),
+            publisherRegistry, pubSubMetrics);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        publisherRegistry.preDestroy();
+        channelProviderFactory.close();
+        server.close();
+    }
+
+    @Test
+    public void testAllMessagesAreHandledAndAcked() throws Exception {
+        publishMessages();
+        Queue<Long> handled = new ConcurrentLinkedQueue<>();
+
+        DrainResult result = drainer.drain(SUBSCRIPTION, batch -> batch.forEach(message -> handled.add(message.getId())));
+
+        assertThat(result.getReceived()).isEqualTo(MESSAGE_COUNT);
+        assertThat(result.getAcked()).isEqualTo(MESSAGE_COUNT);
+        assertThat(handled).containsExactlyInAnyOrderElementsOf(expectedIds());
+        assertThat(drainer.drain(SUBSCRIPTION, batch -> handled.add(-1L)).getReceived()).isZero();
+    }
+
+    @Test
+    public void testFailedBatchIsNackedWhenTheDrainFinishesAndPulledAgain() throws Exception {
+        // Keeps the failed batch from being redelivered during the drain.
+        environment.setProperty("gcloud.pubsub.subscription.retry.initial-backoff-millis", "60000");
+        publishMessages();
+        Queue<Long> handled = new ConcurrentLinkedQueue<>();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        DrainResult result = drainer.drain(SUBSCRIPTION, batch -> {
+            if (failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("First batch fails");
+            }
+            batch.forEach(message -> handled.add(message.getId()));
+        });
+
+        assertThat(result.getNacked()).isEqualTo(10);
+        assertThat(result.getAcked()).isEqualTo(MESSAGE_COUNT - 10);
+        assertThat(drainer.drain(SUBSCRIPTION, batch -> batch.forEach(message -> handled.add(message.getId()))).getAcked()).isEqualTo(10);
+        assertThat(handled).containsExactlyInAnyOrderElementsOf(expectedIds());
+    }
+
+    @Test
+    public void testBatchThatKeepsFailingIsDeadLettered() throws Exception {
+        environment.setProperty("gcloud.pubsub.subscription.retry.max-attempts", "1");
+        publishMessages();
+
+        DrainResult result = drainer.drain(SUBSCRIPTION, batch -> {
+            throw new IllegalStateException("Database is down");
+        });
+
+        assertThat(result.getNacked()).isZero();
+        assertThat(result.getAcked()).isEqualTo(MESSAGE_COUNT);
+        assertThat(drainer.drain(DEAD_LETTER_SUBSCRIPTION, batch -> {}).getAcked()).isEqualTo(MESSAGE_COUNT);
+    }
+
+    @Test
+    public void testUnreadableMessageIsDeadLetteredAndAcked() throws Exception {
+        publishMessages();
+        server.publish(config.getProjectTopicName(TOPIC), List.of(PubsubMessage
+            .newBuilder()
+            .setData(ByteString.copyFromUtf8("{not json"))
+            .build()));
+
+        DrainResult result = drainer.drain(SUBSCRIPTION, batch -> {});
+
+        assertThat(result.getUnreadable()).isEqualTo(1);
+        assertThat(result.getAcked()).isEqualTo(MESSAGE_COUNT + 1);
+        assertThat(drainer.drain(SUBSCRIPTION, batch -> {}).getReceived()).isZero();
+        // The dead-letter subscription has no dead-letter topic itself, so it drops the message after logging it.
+        DrainResult deadLettered = drainer.drain(DEAD_LETTER_SUBSCRIPTION, batch -> {});
+        assertThat(deadLettered.getUnreadable()).isEqualTo(1);
+        assertThat(deadLettered.getAcked()).isEqualTo(1);
+    }
+
+    private void publishMessages() {
+        List<PubsubMessage> messages = expectedIds()
+            .stream()
+            .map(id -> mapper.apply(DummyMessage.builder().id(id).message("message " + id).build()))
+            .collect(Collectors.toList());
+        server.publish(config.getProjectTopicName(TOPIC), messages);
+    }
+
+    private static List<Long> expectedIds() {
+        return LongStream.rangeClosed(1, MESSAGE_COUNT).boxed().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,106 @@
+package nl.luminis.articles.pubsub.subscriber.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PubsubMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.luminis.articles.pubsub.mapper.MessageAttributes;
+import nl.luminis.articles.pubsub.metrics.PubSubMetrics;
+import nl.luminis.articles.pubsub.publisher.PublisherRegistry;
+import nl.luminis.articles.pubsub.subscriber.SubscriberProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class RetryHandlerTest {
+
+    private static final ProjectTopicName DEAD_LETTER_TOPIC = ProjectTopicName.of("my-gcp-project", "my-dead-letters");
+    private static final PubsubMessage MESSAGE = PubsubMessage
+        .newBuilder()
+        .setMessageId("42")
+        .setData(ByteString.copyFromUtf8("{}"))
+        .build();
+
+    private PublisherRegistry publisherRegistry;
+    private RetryHandler retryHandler;
+
+    @Before
+    public void setUp() {
+        SubscriberProperties properties = SubscriberProperties
+            .builder()
+            .retryMaxAttempts(3)
+            .retryInitialBackoffMillis(10L)
+            .retryMaxBackoffMillis(100L)
+            .retryBackoffMultiplier(2.0)
+            .retryMaxTrackedMessages(100)
+            .build();
+        publisherRegistry = mock(PublisherRegistry.class);
+        when(publisherRegistry.publish(eq(DEAD_LETTER_TOPIC), any())).thenReturn(ApiFutures.immediateFuture("dead-letter-1"));
+        retryHandler = new RetryHandler("my-subscription", properties, DEAD_LETTER_TOPIC, publisherRegistry,
+            new PubSubMetrics(new SimpleMeterRegistry()).forSubscription("my-subscription"));
+    }
+
+    @After
+    public void tearDown() {
+        retryHandler.close();
+    }
+
+    @Test
+    public void testFailedMessageIsNackedAfterDelay() {
+        AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+        retryHandler.retry(MESSAGE, consumer, "Database is down");
+
+        verify(consumer, timeout(1000)).nack();
+        verify(publisherRegistry, never()).publish(any(), any());
+    }
+
+    @Test
+    public void testMessageIsDeadLetteredAfterMaxAttempts() {
+        AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+        retryHandler.retry(MESSAGE, consumer, "Database is down");
+        retryHandler.retry(MESSAGE, consumer, "Database is down");
+        retryHandler.retry(MESSAGE, consumer, "Database is down");
+
+        ArgumentCaptor<PubsubMessage> deadLetter = ArgumentCaptor.forClass(PubsubMessage.class);
+        verify(publisherRegistry).publish(eq(DEAD_LETTER_TOPIC), deadLetter.capture());
+        verify(consumer).ack();
+        assertThat(deadLetter.getValue().getMessageId()).isEmpty();
+        assertThat(deadLetter.getValue().getData()).isEqualTo(MESSAGE.getData());
+        assertThat(deadLetter.getValue().getAttributesMap())
+            .containsEntry(MessageAttributes.DEAD_LETTER_SUBSCRIPTION, "my-subscription")
+            .containsEntry(MessageAttributes.DEAD_LETTER_ATTEMPTS, "3")
+            .containsEntry(MessageAttributes.ORIGINAL_MESSAGE_ID, "42")
+            .doesNotContainKey(MessageAttributes.ORIGINAL_ORDERING_KEY);
+    }
+
+    @Test
+    public void testOrderingKeyIsKeptAsAttribute() {
+        retryHandler.deadLetter(MESSAGE.toBuilder().setOrderingKey("customer-1").build(), mock(AckReplyConsumer.class), "Unreadable");
+
+        ArgumentCaptor<PubsubMessage> deadLetter = ArgumentCaptor.forClass(PubsubMessage.class);
+        verify(publisherRegistry).publish(eq(DEAD_LETTER_TOPIC), deadLetter.capture());
+        assertThat(deadLetter.getValue().getOrderingKey()).isEmpty();
+        assertThat(deadLetter.getValue().getAttributesMap()).containsEntry(MessageAttributes.ORIGINAL_ORDERING_KEY, "customer-1");
+    }
+
+    @Test
+    public void testBackoffGrowsUpToMaximum() {
+        assertThat(retryHandler.getBackoffMillis(1)).isBetween(8L, 12L);
+        assertThat(retryHandler.getBackoffMillis(3)).isBetween(32L, 48L);
+        assertThat(retryHandler.getBackoffMillis(10)).isBetween(80L, 100L);
+    }
+}
@@ -0,0 +1,58 @@
+package nl.luminis.articles.pubsub.subscriber.routing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class MessageRouterTest {
+
+    private final RoutedMessageHandler auditHandler = message -> {
+    };
+
+    @Test
+    public void testFirstMatchingRuleWins() {
+        MessageRouter router = new MessageRouter(List.of(
+            rule(Map.of("type", "audit"), RoutingAction.HANDLE, "auditHandler"),
+            rule(Map.of("type", RoutingRule.ANY_VALUE, "tenant", "other"), RoutingAction.SKIP, null)),
+            Map.of("auditHandler", auditHandler));
+
+        MessageRouter.Route audit = router.route(message(Map.of("type", "audit", "tenant", "other")));
+        MessageRouter.Route other = router.route(message(Map.of("type", "order", "tenant", "other")));
+
+        assertThat(audit.getAction()).isEqualTo(RoutingAction.HANDLE);
+        assertThat(audit.getHandler()).isSameAs(auditHandler);
+        assertThat(other.getAction()).isEqualTo(RoutingAction.SKIP);
+    }
+
+    @Test
+    public void testMessageWithoutMatchingAttributesIsNotRouted() {
+        MessageRouter router = new MessageRouter(List.of(rule(Map.of("type", RoutingRule.ANY_VALUE), RoutingAction.SKIP, null)), Map.of());
+
+        assertThat(router.route(message(Map.of("tenant", "other")))).isNull();
+    }
+
+    @Test
+    public void testUnknownHandlerIsRejected() {
+        List<RoutingRule> rules = List.of(rule(Map.of("type", "audit"), RoutingAction.HANDLE, "missing"));
+
+        assertThatThrownBy(() -> new MessageRouter(rules, Map.of()))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("missing");
+    }
+
+    private static RoutingRule rule(Map<String, String> match, RoutingAction action, String handler) {
+        RoutingRule rule = new RoutingRule();
+        rule.setMatch(match);
+        rule.setAction(action);
+        rule.setHandler(handler);
+        return rule;
+    }
+
+    private static PubsubMessage message(Map<String, String> attributes) {
+        return PubsubMessage.newBuilder().putAllAttributes(attributes).build();
+    }
+}
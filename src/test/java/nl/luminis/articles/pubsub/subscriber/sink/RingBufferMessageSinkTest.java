@@ -0,0 +1,93 @@
+package nl.luminis.articles.pubsub.subscriber.sink;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class RingBufferMessageSinkTest {
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertThat(new RingBufferMessageSink<>(1, FullSinkPolicy.NACK).getCapacity()).isEqualTo(2);
+        assertThat(new RingBufferMessageSink<>(5, FullSinkPolicy.NACK).getCapacity()).isEqualTo(8);
+        assertThat(new RingBufferMessageSink<>(8, FullSinkPolicy.NACK).getCapacity()).isEqualTo(8);
+    }
+
+    @Test
+    public void testPollReturnsMessagesInOrder() {
+        RingBufferMessageSink<Integer> sink = new RingBufferMessageSink<>(4, FullSinkPolicy.NACK);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(sink.offer(i)).isTrue();
+            assertThat(sink.size()).isEqualTo(1);
+            assertThat(sink.poll()).isEqualTo(i);
+        }
+        assertThat(sink.poll()).isNull();
+    }
+
+    @Test
+    public void testNackPolicyRejectsWhenFull() {
+        RingBufferMessageSink<Integer> sink = new RingBufferMessageSink<>(2, FullSinkPolicy.NACK);
+
+        assertThat(sink.offer(1)).isTrue();
+        assertThat(sink.offer(2)).isTrue();
+        assertThat(sink.offer(3)).isFalse();
+
+        assertThat(sink.getRejectedCount()).isEqualTo(1);
+        assertThat(sink.poll()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDropOldestPolicyMakesRoom() {
+        RingBufferMessageSink<Integer> sink = new RingBufferMessageSink<>(2, FullSinkPolicy.DROP_OLDEST);
+
+        assertThat(sink.offer(1)).isTrue();
+        assertThat(sink.offer(2)).isTrue();
+        assertThat(sink.offer(3)).isTrue();
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat(sink.drainTo(drained, 10)).isEqualTo(2);
+        assertThat(drained).containsExactly(2, 3);
+        assertThat(sink.getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumer() throws InterruptedException {
+        int producers = 4;
+        int messagesPerProducer = 100_000;
+        RingBufferMessageSink<Long> sink = new RingBufferMessageSink<>(1024, FullSinkPolicy.BLOCK);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            executor.execute(() -> {
+                for (long i = 1; i <= messagesPerProducer; i++) {
+                    sink.offer(i);
+                }
+                done.countDown();
+            });
+        }
+
+        AtomicLong sum = new AtomicLong();
+        long received = 0;
+        while (received < (long) producers * messagesPerProducer) {
+            Long message = sink.poll();
+            if (message != null) {
+                sum.addAndGet(message);
+                received++;
+            }
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        executor.shutdown();
+        assertThat(sum.get()).isEqualTo((long) producers * messagesPerProducer * (messagesPerProducer + 1) / 2);
+        assertThat(sink.size()).isZero();
+    }
+}
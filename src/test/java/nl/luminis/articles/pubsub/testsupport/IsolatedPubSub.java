@@ -0,0 +1,22 @@
+package nl.luminis.articles.pubsub.testsupport;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.springframework.test.annotation.DirtiesContext;
+
+/**
+ * Gives the application context of a Spring test class its own topic and subscription on the shared {@link PubSubEmulator}, by setting
+ * gcloud.pubsub.url, gcloud.pubsub.topic.name and gcloud.pubsub.subscription.name. The context is closed after the test class, which
+ * deletes them asynchronously, as no other test class can use it.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@DirtiesContext
+public @interface IsolatedPubSub {
+}
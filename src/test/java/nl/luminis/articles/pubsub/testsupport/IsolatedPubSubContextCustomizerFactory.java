@@ -0,0 +1,60 @@
+package nl.luminis.articles.pubsub.testsupport;
+
+import com.google.pubsub.v1.ProjectSubscriptionName;
+import com.google.pubsub.v1.ProjectTopicName;
+import java.util.List;
+import java.util.Map;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.support.DefaultSingletonBeanRegistry;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.test.context.ContextConfigurationAttributes;
+import org.springframework.test.context.ContextCustomizer;
+import org.springframework.test.context.ContextCustomizerFactory;
+import org.springframework.test.context.MergedContextConfiguration;
+
+/**
+ * Registered in META-INF/spring.factories, so that every test class annotated with {@link IsolatedPubSub} gets a context of its own with
+ * a {@link PubSubNamespace}.
+ */
+public class IsolatedPubSubContextCustomizerFactory implements ContextCustomizerFactory {
+
+    private static final String PROPERTY_SOURCE_NAME = "isolatedPubSub";
+    private static final String NAMESPACE_BEAN_NAME = "isolatedPubSubNamespace";
+
+    @Override
+    public ContextCustomizer createContextCustomizer(Class<?> testClass, List<ContextConfigurationAttributes> configAttributes) {
+        return AnnotatedElementUtils.hasAnnotation(testClass, IsolatedPubSub.class) ? new IsolatedPubSubContextCustomizer(testClass) : null;
+    }
+
+    // Equal only for the same test class, which keeps Spring from sharing the context with other test classes.
+    @EqualsAndHashCode
+    private static class IsolatedPubSubContextCustomizer implements ContextCustomizer {
+
+        private final Class<?> testClass;
+
+        IsolatedPubSubContextCustomizer(Class<?> testClass) {
+            this.testClass = testClass;
+        }
+
+        @Override
+        public void customizeContext(ConfigurableApplicationContext context, MergedContextConfiguration mergedConfig) {
+            PubSubNamespace namespace = PubSubEmulator.getInstance().createNamespace();
+            ProjectTopicName topic = namespace.createTopic("topic");
+            ProjectSubscriptionName subscription = namespace.createSubscription(topic, "subscription");
+            // Without a dead-letter topic of its own, a test would drop its failed messages, or publish them to another test's topic.
+            ProjectTopicName deadLetterTopic = namespace.createTopic("dead-letter-topic");
+            namespace.createSubscription(deadLetterTopic, "dead-letter-subscription");
+
+            context.getEnvironment().getPropertySources().addFirst(new MapPropertySource(PROPERTY_SOURCE_NAME, Map.<String, Object>of(
+                "gcloud.project.name", namespace.getProjectId(),
+                "gcloud.pubsub.url", namespace.getUrl(),
+                "gcloud.pubsub.topic.name", topic.getTopic(),
+                "gcloud.pubsub.subscription.name", subscription.getSubscription(),
+                "gcloud.pubsub.subscription.dead-letter-topic", deadLetterTopic.getTopic())));
+            // Disposable beans are destroyed in the reverse order of registration, so this runs after the subscriber has been stopped.
+            ((DefaultSingletonBeanRegistry) context.getBeanFactory()).registerDisposableBean(NAMESPACE_BEAN_NAME, namespace::close);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package nl.luminis.articles.pubsub.testsupport;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.NotFoundException;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.cloud.pubsub.v1.SubscriptionAdminClient;
+import com.google.cloud.pubsub.v1.SubscriptionAdminSettings;
+import com.google.cloud.pubsub.v1.TopicAdminClient;
+import com.google.cloud.pubsub.v1.TopicAdminSettings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.pubsub.v1.ProjectSubscriptionName;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PushConfig;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import nl.luminis.articles.pubsub.TestContainerFactory;
+import nl.luminis.articles.pubsub.auth.TransportChannelProviderFactory;
+import nl.luminis.articles.pubsub.fake.FakePubSubServer;
+
+/**
+ * The Pub/Sub server that all tests in a JVM share. When PUBSUB_EMULATOR_HOST is set, e.g. to localhost:8432 for an emulator started from
+ * {@link TestContainerFactory}, that emulator is reused; a {@link FakePubSubServer} is started in the JVM otherwise. Tests do not share
+ * topics and subscriptions, but create their own in a {@link PubSubNamespace}.
+ */
+@Slf4j
+public final class PubSubEmulator {
+
+    public static final String EMULATOR_HOST_VARIABLE = "PUBSUB_EMULATOR_HOST";
+    public static final String PROJECT_ID = TestContainerFactory.PUBSUB_PROJECT_ID;
+
+    private static final int ACK_DEADLINE_SECONDS = 10;
+    private static final int TEARDOWN_THREAD_COUNT = 2;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10L;
+
+    private static PubSubEmulator instance;
+
+    private final String url;
+    // Only present when no running emulator was found.
+    private final FakePubSubServer server;
+    private final ManagedChannel channel;
+    private final TopicAdminClient topicClient;
+    private final SubscriptionAdminClient subscriptionClient;
+    private final ExecutorService teardownExecutor;
+
+    private PubSubEmulator(String url, FakePubSubServer server) {
+        this.url = url;
+        this.server = server;
+        this.channel = url.startsWith(TransportChannelProviderFactory.IN_PROCESS_PREFIX)
+            ? InProcessChannelBuilder.forName(url.substring(TransportChannelProviderFactory.IN_PROCESS_PREFIX.length())).build()
+            : ManagedChannelBuilder.forTarget(url).usePlaintext().build();
+        TransportChannelProvider channelProvider = FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel));
+        try {
+            this.topicClient = TopicAdminClient.create(TopicAdminSettings
+                .newBuilder()
+                .setTransportChannelProvider(channelProvider)
+                .setCredentialsProvider(NoCredentialsProvider.create())
+                .build());
+            this.subscriptionClient = SubscriptionAdminClient.create(SubscriptionAdminSettings
+                .newBuilder()
+                .setTransportChannelProvider(channelProvider)
+                .setCredentialsProvider(NoCredentialsProvider.create())
+                .build());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create Pub/Sub admin clients for " + url, e);
+        }
+        this.teardownExecutor = Executors.newFixedThreadPool(TEARDOWN_THREAD_COUNT,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("pubsub-teardown-%d").build());
+    }
+
+    public static synchronized PubSubEmulator getInstance() {
+        if (instance == null) {
+            String emulatorHost = System.getenv(EMULATOR_HOST_VARIABLE);
+            if (emulatorHost != null && !emulatorHost.isEmpty()) {
+                log.info("Reusing Pub/Sub emulator at {}", emulatorHost);
+                instance = new PubSubEmulator(emulatorHost, null);
+            } else {
+                // Failsafe forks are separate JVMs, so a random name is only needed to not clash with servers that tests start themselves.
+                FakePubSubServer server = FakePubSubServer.start("pubsub-emulator-" + UUID.randomUUID());
+                instance = new PubSubEmulator(server.getUrl(), server);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::shutdown, "pubsub-emulator-shutdown"));
+        }
+        return instance;
+    }
+
+    /**
+     * @return the value for gcloud.pubsub.url that points the application at this emulator
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public PubSubNamespace createNamespace() {
+        return new PubSubNamespace(this);
+    }
+
+    ProjectTopicName createTopic(String topic) {
+        ProjectTopicName name = ProjectTopicName.of(PROJECT_ID, topic);
+        topicClient.createTopic(name);
+        return name;
+    }
+
+    ProjectSubscriptionName createSubscription(ProjectTopicName topic, String subscription) {
+        ProjectSubscriptionName name = ProjectSubscriptionName.of(PROJECT_ID, subscription);
+        subscriptionClient.createSubscription(name, topic, PushConfig.getDefaultInstance(), ACK_DEADLINE_SECONDS);
+        return name;
+    }
+
+    /**
+     * Deletes the subscriptions before their topics in the background, so the next test does not wait for it.
+     */
+    CompletableFuture<Void> deleteAsync(List<ProjectSubscriptionName> subscriptions, List<ProjectTopicName> topics) {
+        return CompletableFuture.runAsync(() -> {
+            subscriptions.forEach(subscription -> delete(subscription.toString(), () -> subscriptionClient.deleteSubscription(subscription)));
+            topics.forEach(topic -> delete(topic.toString(), () -> topicClient.deleteTopic(topic)));
+        }, teardownExecutor);
+    }
+
+    private void delete(String name, Runnable deletion) {
+        try {
+            deletion.run();
+        } catch (NotFoundException e) {
+            log.debug("{} was already deleted", name);
+        } catch (RuntimeException e) {
+            log.warn("Could not delete {}", name, e);
+        }
+    }
+
+    private void shutdown() {
+        // Give pending deletions a chance to finish, so a reused emulator is not left with the topics of every test that ran.
+        teardownExecutor.shutdown();
+        try {
+            if (!teardownExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Topics and subscriptions were still being deleted after {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        topicClient.close();
+        subscriptionClient.close();
+        channel.shutdownNow();
+        if (server != null) {
+            server.close();
+        }
+    }
+}
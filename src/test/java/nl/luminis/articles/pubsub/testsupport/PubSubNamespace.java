@@ -0,0 +1,75 @@
+package nl.luminis.articles.pubsub.testsupport;
+
+import com.google.pubsub.v1.ProjectSubscriptionName;
+import com.google.pubsub.v1.ProjectTopicName;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.rules.ExternalResource;
+
+/**
+ * Topics and subscriptions of a single test, whose names get a random prefix so that tests running at the same time on a shared emulator
+ * never see each other's messages. Use it as a {@link org.junit.Rule} for a namespace per test method or as a {@link org.junit.ClassRule}
+ * for one per test class; everything that was created is deleted asynchronously afterwards.
+ */
+public class PubSubNamespace extends ExternalResource implements AutoCloseable {
+
+    private final PubSubEmulator emulator;
+    private final String prefix;
+    private final List<ProjectTopicName> topics;
+    private final List<ProjectSubscriptionName> subscriptions;
+
+    public PubSubNamespace() {
+        this(PubSubEmulator.getInstance());
+    }
+
+    PubSubNamespace(PubSubEmulator emulator) {
+        this.emulator = emulator;
+        // Names must start with a letter.
+        this.prefix = "test-" + UUID.randomUUID().toString().substring(0, 8) + "-";
+        this.topics = new CopyOnWriteArrayList<>();
+        this.subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    public String getUrl() {
+        return emulator.getUrl();
+    }
+
+    public String getProjectId() {
+        return PubSubEmulator.PROJECT_ID;
+    }
+
+    public ProjectTopicName createTopic(String name) {
+        ProjectTopicName topic = emulator.createTopic(prefix + name);
+        topics.add(topic);
+        return topic;
+    }
+
+    public ProjectSubscriptionName createSubscription(ProjectTopicName topic, String name) {
+        ProjectSubscriptionName subscription = emulator.createSubscription(topic, prefix + name);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * @return a future that completes once everything in this namespace was deleted
+     */
+    public CompletableFuture<Void> deleteAsync() {
+        List<ProjectSubscriptionName> deletedSubscriptions = List.copyOf(subscriptions);
+        List<ProjectTopicName> deletedTopics = List.copyOf(topics);
+        subscriptions.clear();
+        topics.clear();
+        return emulator.deleteAsync(deletedSubscriptions, deletedTopics);
+    }
+
+    @Override
+    public void close() {
+        deleteAsync();
+    }
+
+    @Override
+    protected void after() {
+        close();
+    }
+}